@@ -0,0 +1,135 @@
+package asgn2Benchmarks;
+
+import java.util.Arrays;
+
+import asgn2Codes.ContainerCode;
+import asgn2Exceptions.InvalidCodeException;
+
+/**
+ * A small micro-benchmark harness.  The project has no build system to
+ * pull in a benchmarking library, so each benchmark is a subclass of this
+ * class which runs the operation being measured a given number of times;
+ * the harness warms it up, times several rounds and reports the median
+ * time per operation.
+ * <p>
+ * The results are indicative only.  Unlike a harness such as JMH, it
+ * always runs five warm-up and seven measured rounds, in the JVM it is
+ * started in, without forking a fresh JVM for each benchmark; so JIT
+ * decisions, garbage collections and the benchmarks run before one can all
+ * move its numbers.  Differences of a few tens of percent between runs
+ * should not be read as regressions or improvements.
+ * <p>
+ * The result of each run is folded into a volatile field so the JIT
+ * compiler cannot remove the work being measured.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public abstract class Benchmark {
+	
+	// number of warm-up rounds before measuring
+	private static final int WARMUP_ROUNDS = 5;
+	// number of measured rounds
+	private static final int ROUNDS = 7;
+	
+	// consumes results so the measured work is not optimised away
+	private static volatile long sink;
+	
+	private final String name;
+	
+	/**
+	 * Constructs a benchmark.
+	 * 
+	 * @param name the name reported with the results
+	 */
+	protected Benchmark(String name) {
+		this.name = name;
+	}
+	
+	/**
+	 * Prepares the state for a round, outside the timed section.  Does
+	 * nothing unless overridden.
+	 * 
+	 * @throws Exception if the state cannot be prepared
+	 */
+	protected void setUp() throws Exception {
+	}
+	
+	/**
+	 * Runs the measured operation the given number of times.
+	 * 
+	 * @param operations the number of operations to run
+	 * @return any value depending on the work done
+	 * @throws Exception if the operation fails
+	 */
+	protected abstract long run(int operations) throws Exception;
+	
+	/**
+	 * Warms up and measures this benchmark, and prints the median time per
+	 * operation.
+	 * 
+	 * @param operations the number of operations in each round
+	 * @return the median time per operation (in nanoseconds)
+	 * @throws Exception if the operation fails
+	 */
+	public double measure(int operations) throws Exception {
+		for (int i = 0; i < WARMUP_ROUNDS; i++) {
+			setUp();
+			sink += run(operations);
+		}
+		double[] times = new double[ROUNDS];
+		for (int i = 0; i < ROUNDS; i++) {
+			setUp();
+			long start = System.nanoTime();
+			sink += run(operations);
+			times[i] = (double) (System.nanoTime() - start) / operations;
+		}
+		Arrays.sort(times);
+		double median = times[ROUNDS / 2];
+		System.out.println(String.format("%-50s %12.1f ns/op  (min %.1f, max %.1f)",
+				name, median, times[0], times[ROUNDS - 1]));
+		return median;
+	}
+	
+	/**
+	 * Returns distinct valid container codes, numbered from <code>first</code>.
+	 * 
+	 * @param first the number of the first code
+	 * @param count the number of codes
+	 * @return the codes
+	 */
+	public static ContainerCode[] codes(int first, int count) {
+		ContainerCode[] codes = new ContainerCode[count];
+		for (int i = 0; i < count; i++) {
+			codes[i] = code(first + i);
+		}
+		return codes;
+	}
+	
+	/**
+	 * Returns the valid container code with owner number
+	 * <code>n / 1000000</code> and serial number <code>n % 1000000</code>.
+	 */
+	private static ContainerCode code(int n) {
+		int owner = n / 1000000;
+		int serial = n % 1000000;
+		int sum = owner / 676 + owner / 26 % 26 + owner % 26 + ('U' - 'A');
+		for (int rest = serial; rest > 0; rest /= 10) {
+			sum += rest % 10;
+		}
+		try {
+			return ContainerCode.fromLong(owner * 10000000L + serial * 10L + sum % 10);
+		} catch (InvalidCodeException e) {
+			throw new IllegalArgumentException(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns the name of this benchmark.
+	 * 
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+}
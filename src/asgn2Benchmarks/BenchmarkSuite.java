@@ -0,0 +1,30 @@
+package asgn2Benchmarks;
+
+/**
+ * Runs every benchmark: container codes, freight containers and the cargo
+ * manifest on ships of 10 to 100,000 stacks.  Run it with the project's
+ * compiled classes on the class path, e.g.
+ * <pre>
+ * java -cp bin asgn2Benchmarks.BenchmarkSuite
+ * </pre>
+ * and compare the reported times between versions to spot regressions.
+ * Use a quiet machine and the same JVM for runs being compared.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class BenchmarkSuite {
+	
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args passed on to <code>ManifestBenchmarks</code>: the numbers of
+	 * stacks to measure, or none for the defaults
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		CodeBenchmarks.main(new String[0]);
+		ContainerBenchmarks.main(new String[0]);
+		ManifestBenchmarks.main(args);
+	}
+}
@@ -0,0 +1,191 @@
+package asgn2Benchmarks;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import asgn2Codes.ContainerCode;
+import asgn2Exceptions.InvalidCodeException;
+
+/**
+ * Benchmarks for validating container codes.  Compares the regular
+ * expression based validation the <code>ContainerCode</code> constructor
+ * used to do (kept here as a baseline) with the current constructor and
+ * the non-throwing <code>tryParse</code> and <code>validate</code> methods,
+ * on valid codes and on a mix of invalid ones.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class CodeBenchmarks {
+	
+	// number of distinct codes cycled through by each benchmark
+	private static final int CODES = 4096;
+	// number of operations in each measured round
+	private static final int OPERATIONS = 1000000;
+	
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args not used
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		Random random = new Random(42);
+		String[] valid = new String[CODES];
+		String[] invalid = new String[CODES];
+		for (int i = 0; i < CODES; i++) {
+			valid[i] = randomCode(random);
+			invalid[i] = spoil(valid[i], i);
+		}
+		for (Benchmark benchmark : benchmarks("valid", valid)) {
+			benchmark.measure(OPERATIONS);
+		}
+		for (Benchmark benchmark : benchmarks("invalid", invalid)) {
+			benchmark.measure(OPERATIONS);
+		}
+	}
+	
+	/**
+	 * Returns the benchmarks for one set of codes.
+	 */
+	private static Benchmark[] benchmarks(String kind, final String[] codes) {
+		return new Benchmark[] {
+			new Benchmark("code: regex constructor (old), " + kind) {
+				@Override
+				protected long run(int operations) {
+					long accepted = 0;
+					for (int i = 0; i < operations; i++) {
+						try {
+							legacyValidate(codes[i & (CODES - 1)]);
+							accepted++;
+						} catch (InvalidCodeException e) {
+						}
+					}
+					return accepted;
+				}
+			},
+			new Benchmark("code: constructor, " + kind) {
+				@Override
+				protected long run(int operations) {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						try {
+							sum += new ContainerCode(codes[i & (CODES - 1)]).toLong();
+						} catch (InvalidCodeException e) {
+						}
+					}
+					return sum;
+				}
+			},
+			new Benchmark("code: tryParse, " + kind) {
+				@Override
+				protected long run(int operations) {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						ContainerCode code = ContainerCode.tryParse(codes[i & (CODES - 1)]);
+						if (code != null) {
+							sum += code.toLong();
+						}
+					}
+					return sum;
+				}
+			},
+			new Benchmark("code: validate, " + kind) {
+				@Override
+				protected long run(int operations) {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						sum += ContainerCode.validate(codes[i & (CODES - 1)]);
+					}
+					return sum;
+				}
+			}
+		};
+	}
+	
+	/**
+	 * Returns a random valid container code.
+	 */
+	static String randomCode(Random random) {
+		StringBuilder code = new StringBuilder(11);
+		int sum = 'U' - 'A';
+		for (int i = 0; i < 3; i++) {
+			int letter = random.nextInt(26);
+			code.append((char) ('A' + letter));
+			sum += letter;
+		}
+		code.append('U');
+		for (int i = 0; i < 6; i++) {
+			int digit = random.nextInt(10);
+			code.append((char) ('0' + digit));
+			sum += digit;
+		}
+		return code.append((char) ('0' + sum % 10)).toString();
+	}
+	
+	/**
+	 * Makes a valid code invalid in one of several ways, mostly with a
+	 * wrong check digit as happens with mistyped codes.
+	 */
+	private static String spoil(String code, int i) {
+		switch (i % 8) {
+		case 0:
+			return code.toLowerCase();
+		case 1:
+			return code.substring(0, 10);
+		case 2:
+			return code.substring(0, 3) + "J" + code.substring(4);
+		case 3:
+			return code.substring(0, 5) + "X" + code.substring(6);
+		default:
+			return code.substring(0, 10) + (char) ('0' + (code.charAt(10) - '0' + 1) % 10);
+		}
+	}
+	
+	/**
+	 * The validation done by the <code>ContainerCode</code> constructor
+	 * before it was replaced by a single pass over the characters.
+	 */
+	private static void legacyValidate(String code) throws InvalidCodeException {
+		if (code == null || code.isEmpty()) {
+			throw new InvalidCodeException("Missing code");
+		}
+		if (code.length() != 11) {
+			throw new InvalidCodeException("The code is not eleven characters long");
+		}
+		Matcher m1 = Pattern.compile("[A-Z]{3}[A-Z0-9]*").matcher(code);
+		if (!m1.lookingAt()) {
+			throw new InvalidCodeException("The code does not have three upper-case letter");
+		}
+		Matcher m2 = Pattern.compile("[A-Z]{3}U[A-Z0-9]*").matcher(code);
+		if (!m2.lookingAt()) {
+			throw new InvalidCodeException("The code does not have Indentifier 'U'");
+		}
+		Matcher m3 = Pattern.compile("[A-Z]{3}U[0-9]{6}[0-9]*").matcher(code);
+		if (!m3.lookingAt()) {
+			throw new InvalidCodeException("The code does not consist of six digits");
+		}
+		if (code.charAt(10) < '0' || code.charAt(10) > '9') {
+			throw new InvalidCodeException("The Check Digit is incorrect");
+		}
+		char[] codeArray = code.toCharArray();
+		char[] letterArray = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
+		int checkDigit = Integer.parseInt(code.substring(code.length() - 1));
+		int sumOfThreeUpperCase = 0;
+		for (int i = 0; i < 3; i++) {
+			for (int j = 0; j < 26; j++) {
+				if (codeArray[i] == letterArray[j]) {
+					sumOfThreeUpperCase += j;
+				}
+			}
+		}
+		int sumOfDigits = 0;
+		for (int i = 0; i < 6; i++) {
+			sumOfDigits += Character.getNumericValue(codeArray[4 + i]);
+		}
+		if (checkDigit != (sumOfThreeUpperCase + 20 + sumOfDigits) % 10) {
+			throw new InvalidCodeException("The Check Digit is incorrect");
+		}
+	}
+}
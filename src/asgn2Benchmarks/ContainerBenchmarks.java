@@ -0,0 +1,73 @@
+package asgn2Benchmarks;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.GeneralGoodsContainer;
+import asgn2Containers.RefrigeratedContainer;
+
+/**
+ * Benchmarks for constructing each kind of freight container.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ContainerBenchmarks {
+	
+	// number of distinct codes cycled through by each benchmark
+	private static final int CODES = 4096;
+	// number of operations in each measured round
+	private static final int OPERATIONS = 1000000;
+	
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args not used
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		for (Benchmark benchmark : benchmarks()) {
+			benchmark.measure(OPERATIONS);
+		}
+	}
+	
+	/**
+	 * Returns the container construction benchmarks.
+	 * 
+	 * @return the benchmarks
+	 */
+	static Benchmark[] benchmarks() {
+		final ContainerCode[] codes = Benchmark.codes(0, CODES);
+		return new Benchmark[] {
+			new Benchmark("container: new GeneralGoodsContainer") {
+				@Override
+				protected long run(int operations) throws Exception {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						sum += new GeneralGoodsContainer(codes[i & (CODES - 1)], 4 + (i & 15)).getGrossWeight();
+					}
+					return sum;
+				}
+			},
+			new Benchmark("container: new RefrigeratedContainer") {
+				@Override
+				protected long run(int operations) throws Exception {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						sum += new RefrigeratedContainer(codes[i & (CODES - 1)], 4 + (i & 15), i & 7).getGrossWeight();
+					}
+					return sum;
+				}
+			},
+			new Benchmark("container: new DangerousGoodsContainer") {
+				@Override
+				protected long run(int operations) throws Exception {
+					long sum = 0;
+					for (int i = 0; i < operations; i++) {
+						sum += new DangerousGoodsContainer(codes[i & (CODES - 1)], 4 + (i & 15), 1 + (i & 7)).getGrossWeight();
+					}
+					return sum;
+				}
+			}
+		};
+	}
+}
@@ -0,0 +1,365 @@
+package asgn2Benchmarks;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Containers.GeneralGoodsContainer;
+import asgn2Exceptions.ManifestException;
+import asgn2Manifests.CargoManifest;
+import asgn2Manifests.ManifestResult;
+
+/**
+ * Benchmarks for the operations of <code>CargoManifest</code>, including
+ * the rejected operations, which throw <code>ManifestException</code> or
+ * return a <code>ManifestResult</code>, on ships of different sizes.  Each ship has the given number of stacks,
+ * each up to <code>MAX_HEIGHT</code> high, and is half full while lookups
+ * are measured.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestBenchmarks {
+	
+	// the ship sizes measured unless others are given on the command line
+	private static final int[] STACKS = { 10, 100, 1000, 10000, 100000 };
+	// the maximum stack height of every ship
+	private static final int MAX_HEIGHT = 10;
+	// number of operations in each round of the lookup benchmarks
+	private static final int LOOKUPS = 200000;
+	// number of operations in each round of the rejection benchmarks
+	private static final int REJECTIONS = 100000;
+	
+	/**
+	 * Runs the benchmarks.
+	 * 
+	 * @param args the numbers of stacks to measure, or none for the defaults
+	 * @throws Exception if a benchmark fails
+	 */
+	public static void main(String[] args) throws Exception {
+		int[] stacks = STACKS;
+		if (args.length > 0) {
+			stacks = new int[args.length];
+			for (int i = 0; i < args.length; i++) {
+				stacks[i] = Integer.parseInt(args[i]);
+			}
+		}
+		for (int numStacks : stacks) {
+			run(numStacks);
+		}
+	}
+	
+	/**
+	 * Runs all the benchmarks for one ship size.
+	 * 
+	 * @param numStacks the number of stacks of the ship
+	 * @throws Exception if a benchmark fails
+	 */
+	static void run(final int numStacks) throws Exception {
+		final int load = numStacks * MAX_HEIGHT / 2;
+		final FreightContainer[] containers = new FreightContainer[load];
+		ContainerCode[] codes = Benchmark.codes(0, load);
+		for (int i = 0; i < load; i++) {
+			containers[i] = new GeneralGoodsContainer(codes[i], 4 + (i & 15));
+		}
+		final ContainerCode missing = Benchmark.codes(load, 1)[0];
+		final FreightContainer extra = new GeneralGoodsContainer(missing, 4);
+		final CargoManifest loaded = loaded(numStacks, containers);
+		final String ship = " [" + numStacks + " stacks]";
+		
+		heap("manifest: retained heap, half full" + ship, numStacks, containers);
+		
+		new Benchmark("manifest: loadContainer" + ship) {
+			private CargoManifest manifest;
+			
+			@Override
+			protected void setUp() throws Exception {
+				manifest = empty(numStacks);
+			}
+			
+			@Override
+			protected long run(int operations) throws Exception {
+				for (int i = 0; i < operations; i++) {
+					manifest.loadContainer(containers[i]);
+				}
+				return manifest.getVersion();
+			}
+		}.measure(load);
+		
+		new Benchmark("manifest: loadContainer, balanced" + ship) {
+			private CargoManifest manifest;
+			
+			@Override
+			protected void setUp() throws Exception {
+				manifest = balanced(numStacks, Long.MAX_VALUE);
+			}
+			
+			@Override
+			protected long run(int operations) throws Exception {
+				for (int i = 0; i < operations; i++) {
+					manifest.loadContainer(containers[i]);
+				}
+				return manifest.getTrimMoment();
+			}
+		}.measure(load);
+		
+		new Benchmark("manifest: loadAll" + ship) {
+			private CargoManifest manifest;
+			private final List<FreightContainer> batch = Arrays.asList(containers);
+			
+			@Override
+			protected void setUp() throws Exception {
+				manifest = empty(numStacks);
+			}
+			
+			@Override
+			protected long run(int operations) throws Exception {
+				return manifest.loadAll(batch).size();
+			}
+		}.measure(load);
+		
+		new Benchmark("manifest: unloadContainer" + ship) {
+			private CargoManifest manifest;
+			
+			@Override
+			protected void setUp() throws Exception {
+				manifest = loaded(numStacks, containers);
+			}
+			
+			@Override
+			protected long run(int operations) throws Exception {
+				for (int i = operations - 1; i >= 0; i--) {
+					manifest.unloadContainer(containers[i].getCode());
+				}
+				return manifest.getVersion();
+			}
+		}.measure(load);
+		
+		new Benchmark("manifest: whichStack" + ship) {
+			@Override
+			protected long run(int operations) {
+				long sum = 0;
+				for (int i = 0; i < operations; i++) {
+					sum += loaded.whichStack(containers[i % load].getCode());
+				}
+				return sum;
+			}
+		}.measure(LOOKUPS);
+		
+		new Benchmark("manifest: howHigh" + ship) {
+			@Override
+			protected long run(int operations) {
+				long sum = 0;
+				for (int i = 0; i < operations; i++) {
+					sum += loaded.howHigh(containers[i % load].getCode());
+				}
+				return sum;
+			}
+		}.measure(LOOKUPS);
+		
+		new Benchmark("manifest: toArray" + ship) {
+			@Override
+			protected long run(int operations) throws Exception {
+				long sum = 0;
+				for (int i = 0; i < operations; i++) {
+					sum += loaded.toArray(i % numStacks).length;
+				}
+				return sum;
+			}
+		}.measure(LOOKUPS);
+		
+		new Benchmark("manifest: toString (whole ship)" + ship) {
+			@Override
+			protected long run(int operations) {
+				long sum = 0;
+				for (int i = 0; i < operations; i++) {
+					sum += loaded.toString(missing).length();
+				}
+				return sum;
+			}
+		}.measure(Math.max(1, LOOKUPS / load));
+		
+		new Benchmark("manifest: rejected load, weight limit" + ship) {
+			private final CargoManifest manifest = new CargoManifest(numStacks, MAX_HEIGHT, 0);
+			
+			@Override
+			protected long run(int operations) {
+				return rejectLoads(manifest, extra, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryLoad, weight limit" + ship) {
+			private final CargoManifest manifest = new CargoManifest(numStacks, MAX_HEIGHT, 0);
+			
+			@Override
+			protected long run(int operations) {
+				return rejectTryLoads(manifest, extra, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected load, duplicate code" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectLoads(loaded, containers[0], operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryLoad, duplicate code" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectTryLoads(loaded, containers[0], operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected load, no space" + ship) {
+			private final CargoManifest manifest = new CargoManifest(numStacks, 0, Integer.MAX_VALUE);
+			
+			@Override
+			protected long run(int operations) {
+				return rejectLoads(manifest, extra, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryLoad, no space" + ship) {
+			private final CargoManifest manifest = new CargoManifest(numStacks, 0, Integer.MAX_VALUE);
+			
+			@Override
+			protected long run(int operations) {
+				return rejectTryLoads(manifest, extra, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryLoad, balance" + ship) {
+			private final CargoManifest manifest = balanced(numStacks, 0);
+			
+			@Override
+			protected long run(int operations) {
+				return rejectTryLoads(manifest, extra, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected unload, not on top" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectUnloads(loaded, containers[0].getCode(), operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryUnload, not on top" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectTryUnloads(loaded, containers[0].getCode(), operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected unload, not on board" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectUnloads(loaded, missing, operations);
+			}
+		}.measure(REJECTIONS);
+		
+		new Benchmark("manifest: rejected tryUnload, not on board" + ship) {
+			@Override
+			protected long run(int operations) {
+				return rejectTryUnloads(loaded, missing, operations);
+			}
+		}.measure(REJECTIONS);
+	}
+	
+	/**
+	 * Prints the heap a manifest holds on to, empty and once the containers
+	 * are loaded, not counting the containers themselves.  The heap is read
+	 * after asking for garbage collections, so the figures are approximate;
+	 * run with a single-threaded collector (-XX:+UseSerialGC) for steadier
+	 * ones.
+	 */
+	private static void heap(String name, int numStacks, FreightContainer[] containers) throws ManifestException {
+		long before = usedHeap();
+		CargoManifest manifest = empty(numStacks);
+		long empty = usedHeap() - before;
+		manifest.loadAll(Arrays.asList(containers));
+		long full = usedHeap() - before;
+		System.out.println(String.format("%-50s %12.1f bytes/container  (empty ship %d bytes)",
+				name, (double) full / containers.length, empty));
+		if (manifest.getVersion() != containers.length) {
+			throw new AssertionError();		// keeps the manifest reachable while measuring
+		}
+	}
+	
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+	
+	private static CargoManifest empty(int numStacks) throws ManifestException {
+		return new CargoManifest(numStacks, MAX_HEIGHT, Integer.MAX_VALUE);
+	}
+	
+	private static CargoManifest balanced(int numStacks, long maxMoment) throws ManifestException {
+		CargoManifest manifest = empty(numStacks);
+		int[] longitudinal = new int[numStacks];
+		int[] transverse = new int[numStacks];
+		for (int i = 0; i < numStacks; i++) {
+			longitudinal[i] = 600 * (i - numStacks / 2);	// 20-foot bays
+			transverse[i] = 250 * ((i & 7) - 4);			// eight rows abreast
+		}
+		manifest.setStackCoordinates(longitudinal, transverse, maxMoment, maxMoment);
+		return manifest;
+	}
+	
+	private static CargoManifest loaded(int numStacks, FreightContainer[] containers) throws ManifestException {
+		CargoManifest manifest = empty(numStacks);
+		manifest.loadAll(new ArrayList<FreightContainer>(Arrays.asList(containers)));
+		return manifest;
+	}
+	
+	private static long rejectLoads(CargoManifest manifest, FreightContainer container, int operations) {
+		long rejected = 0;
+		for (int i = 0; i < operations; i++) {
+			try {
+				manifest.loadContainer(container);
+			} catch (ManifestException e) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+	
+	private static long rejectTryLoads(CargoManifest manifest, FreightContainer container, int operations) {
+		long rejected = 0;
+		for (int i = 0; i < operations; i++) {
+			if (manifest.tryLoad(container) != ManifestResult.DONE) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+	
+	private static long rejectUnloads(CargoManifest manifest, ContainerCode code, int operations) {
+		long rejected = 0;
+		for (int i = 0; i < operations; i++) {
+			try {
+				manifest.unloadContainer(code);
+			} catch (ManifestException e) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+	
+	private static long rejectTryUnloads(CargoManifest manifest, ContainerCode code, int operations) {
+		long rejected = 0;
+		for (int i = 0; i < operations; i++) {
+			if (manifest.tryUnload(code) != ManifestResult.DONE) {
+				rejected++;
+			}
+		}
+		return rejected;
+	}
+}
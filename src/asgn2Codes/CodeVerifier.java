@@ -0,0 +1,213 @@
+package asgn2Codes;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Checks every container code in a file of codes, one code per line, such
+ * as a dump of all codes seen in a day.  The file is memory mapped and
+ * each line is checked in place as bytes with
+ * <code>ContainerCode.validate(ByteBuffer, int, int)</code>, so no
+ * <code>String</code> or <code>ContainerCode</code> is created per line.
+ * The file is split at line boundaries into parts which are checked in
+ * parallel.
+ * <p>
+ * The invalid records are reported in file order, one per line, as the
+ * byte offset of the record, a tab and the constructor's message for the
+ * problem.  A line break may be <code>\n</code> or <code>\r\n</code>; an
+ * empty line is a missing code.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class CodeVerifier {
+
+	// largest part of the file mapped at once
+	static final int MAX_PART_SIZE = 1 << 30;
+	// bytes of a part scanned at once
+	static final int WINDOW_SIZE = 1 << 16;
+
+	private final int threads;
+
+	/**
+	 * Constructs a verifier.
+	 *
+	 * @param threads the number of threads checking the file, usually the
+	 * number of processors
+	 * @throws IllegalArgumentException if there is not at least one thread
+	 */
+	public CodeVerifier(int threads) {
+		if (threads < 1) {
+			throw new IllegalArgumentException("Invalid number of threads");
+		}
+		this.threads = threads;
+	}
+
+	/**
+	 * Checks the codes in a file.
+	 *
+	 * @param file the file of codes
+	 * @param report where to write the offsets of the invalid records
+	 * @return the number of invalid records
+	 * @throws IOException if the file cannot be read or the report cannot be
+	 * written
+	 */
+	public long verify(Path file, Writer report) throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			List<Future<long[]>> parts = new ArrayList<Future<long[]>>();
+			long size = channel.size();
+			long partSize = Math.max(1, Math.min(MAX_PART_SIZE, (size + threads - 1) / threads));
+			long start = 0;
+			while (start < size) {
+				long end = lineStart(channel, Math.min(size, start + partSize));
+				if (end - start > MAX_PART_SIZE) {
+					throw new IOException("A line is longer than " + MAX_PART_SIZE + " bytes");
+				}
+				final MappedByteBuffer part = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+				final long offset = start;
+				parts.add(workers.submit(new Callable<long[]>() {
+					public long[] call() {
+						return check(part, offset);
+					}
+				}));
+				start = end;
+			}
+
+			long invalid = 0;
+			for (Future<long[]> part : parts) {
+				long[] found = get(part);
+				int count = (int) found[0];
+				for (int i = 1; i <= count; i++) {
+					report.write(Long.toString(found[i] >>> 3));
+					report.write('\t');
+					report.write(ContainerCode.message((int) (found[i] & 7)));
+					report.write('\n');
+				}
+				invalid += count;
+			}
+			report.flush();
+			return invalid;
+		} finally {
+			workers.shutdownNow();
+		}
+	}
+
+	private static long[] get(Future<long[]> part) throws IOException {
+		try {
+			return part.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while verifying", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot verify the file", e.getCause());
+		}
+	}
+
+	/**
+	 * Returns the start of the first line at or after a position, i.e., the
+	 * position itself if a line starts there, or the end of the file.
+	 */
+	private static long lineStart(FileChannel channel, long position) throws IOException {
+		long size = channel.size();
+		if (position == 0 || position >= size) {
+			return Math.min(position, size);
+		}
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long at = position - 1;
+		while (at < size) {
+			buffer.clear();
+			int read = channel.read(buffer, at);
+			if (read < 0) {
+				break;
+			}
+			for (int i = 0; i < read; i++) {
+				if (buffer.get(i) == '\n') {
+					return at + i + 1;
+				}
+			}
+			at += read;
+		}
+		return size;
+	}
+
+	/**
+	 * Checks the lines of one part of the file.  The part is scanned through
+	 * a small window of bytes copied out of it in bulk, which is much faster
+	 * than reading a mapped buffer one byte at a time; the buffer itself is
+	 * only read directly to find out why a code is invalid.
+	 *
+	 * @param part the mapped part, starting at the beginning of a line
+	 * @param offset the offset of the part in the file
+	 * @return the number of invalid records, followed by the offset of each
+	 * shifted left three bits, with the problem found in the lowest three bits
+	 */
+	static long[] check(ByteBuffer part, long offset) {
+		long[] found = new long[16];
+		int count = 0;
+		byte[] window = new byte[WINDOW_SIZE];
+		ByteBuffer source = part.duplicate();
+		int limit = part.limit();
+		int base = 0;
+		while (base < limit) {
+			int filled = Math.min(window.length, limit - base);
+			source.position(base);
+			source.get(window, 0, filled);
+			boolean last = base + filled == limit;
+			int start = 0;
+			while (start < filled) {
+				if (start + 11 < filled && window[start + 11] == '\n'
+						&& ContainerCode.pack(window, start) != ContainerCode.INVALID) {
+					start += 12;		// a valid code, which cannot contain a line break
+					continue;
+				}
+				int end = start;
+				while (end < filled && window[end] != '\n') {
+					end++;
+				}
+				if (end == filled && !last) {
+					break;		// the line continues past the window
+				}
+				int length = end - start;
+				if (length > 0 && window[end - 1] == '\r') {
+					length--;
+				}
+				if (length != 11 || ContainerCode.pack(window, start) == ContainerCode.INVALID) {
+					if (++count == found.length) {
+						found = Arrays.copyOf(found, found.length * 2);
+					}
+					found[count] = (offset + base + start) << 3 | ContainerCode.validate(part, base + start, length);
+				}
+				start = end + 1;
+			}
+			if (start == 0) {
+				// a line longer than the window, which is certainly not a valid code
+				int end = base + filled;
+				while (end < limit && part.get(end) != '\n') {
+					end++;
+				}
+				if (++count == found.length) {
+					found = Arrays.copyOf(found, found.length * 2);
+				}
+				found[count] = (offset + base) << 3 | ContainerCode.BAD_LENGTH;
+				start = end + 1 - base;
+			}
+			base += start;
+		}
+		found[0] = count;
+		return found;
+	}
+}
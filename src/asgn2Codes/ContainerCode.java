@@ -1,8 +1,6 @@
 package asgn2Codes;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.nio.ByteBuffer;
 
 import asgn2Exceptions.InvalidCodeException;
 
@@ -89,7 +87,49 @@ import asgn2Exceptions.InvalidCodeException;
  */ 
 public class ContainerCode {
 
+	/**
+	 * The value returned by the <code>pack</code> methods for a character
+	 * sequence which is not a valid container code.
+	 */
+	public static final long INVALID = -1L;
+	
+	// the owner code is packed above the seven digits of serial number and check digit
+	private static final long OWNER_UNIT = 10000000L;
+	// number of possible owner codes, AAA to ZZZ
+	private static final long OWNERS = 26 * 26 * 26;
+	// the sum of the category identifier 'U' as used in the check digit
+	private static final int CATEGORY_VALUE = 'U' - 'A';
+	
+	/** Result of <code>validate</code> for a valid container code. */
+	public static final int VALID = 0;
+	/** Result of <code>validate</code> for a missing or empty code. */
+	public static final int MISSING = 1;
+	/** Result of <code>validate</code> for a code which is not eleven characters long. */
+	public static final int BAD_LENGTH = 2;
+	/** Result of <code>validate</code> for a code without three upper-case letters as Owner Code. */
+	public static final int BAD_OWNER_CODE = 3;
+	/** Result of <code>validate</code> for a code whose Category Identifier is not 'U'. */
+	public static final int BAD_CATEGORY = 4;
+	/** Result of <code>validate</code> for a code without a six digit Serial Number. */
+	public static final int BAD_SERIAL_NUMBER = 5;
+	/** Result of <code>validate</code> for a code with an incorrect Check Digit. */
+	public static final int BAD_CHECK_DIGIT = 6;
+	
+	// the messages of the InvalidCodeException thrown for each result of validate
+	private static final String[] MESSAGES = {
+		null,
+		"Missing code",
+		"The code is not eleven characters long",
+		"The code does not have three upper-case letter",
+		"The code does not have Indentifier 'U'",
+		"The code does not consist of six digits",
+		"The Check Digit is incorrect"
+	};
+
+	// the code as a string, null until toString is called for codes made by fromLong
 	String code;
+	// the code packed into a long, see pack(CharSequence)
+	long packed;
 
 	/**
 	 * Constructs a new container code.
@@ -101,60 +141,262 @@ public class ContainerCode {
 	 * of six digits; or if the Check Digit is incorrect.
 	 */
 	public ContainerCode(String code) throws InvalidCodeException {
-		if (code == null || code.isEmpty()) {
-			throw new InvalidCodeException("Missing code");
+		long parsed = parse(code);
+		if (parsed < 0) {
+			throw new InvalidCodeException(MESSAGES[(int) -parsed]);
+		}
+		
+		this.code = code;
+		this.packed = parsed;
+	}
+	
+	/**
+	 * Returns the container code for the given characters, or
+	 * <code>null</code> if they are not a valid container code.  Unlike the
+	 * constructor no exception is created for an invalid code, which makes
+	 * this the cheaper choice when many codes are expected to be invalid.
+	 * 
+	 * @param code the container code as a sequence of characters
+	 * @return the container code, or <code>null</code> if it is invalid
+	 */
+	public static ContainerCode tryParse(CharSequence code) {
+		long parsed = parse(code);
+		return parsed < 0 ? null : new ContainerCode(code.toString(), parsed);
+	}
+	
+	/**
+	 * Checks whether the given characters are a valid container code, in a
+	 * single pass and without creating any objects.  The checks and their
+	 * order are the same as for the constructor.
+	 * 
+	 * @param code the container code as a sequence of characters
+	 * @return <code>VALID</code>, or the first problem found, one of
+	 * <code>MISSING</code>, <code>BAD_LENGTH</code>, <code>BAD_OWNER_CODE</code>,
+	 * <code>BAD_CATEGORY</code>, <code>BAD_SERIAL_NUMBER</code> or
+	 * <code>BAD_CHECK_DIGIT</code>
+	 */
+	public static int validate(CharSequence code) {
+		long parsed = parse(code);
+		return parsed < 0 ? (int) -parsed : VALID;
+	}
+	
+	/**
+	 * Checks whether the ASCII bytes at the given position of a buffer are a
+	 * valid container code, without creating any objects or moving the
+	 * buffer's position.  The checks and their order are the same as for
+	 * <code>validate(CharSequence)</code>.
+	 * 
+	 * @param bytes the buffer holding the code
+	 * @param offset the index of the first byte of the code
+	 * @param length the number of bytes of the code
+	 * @return <code>VALID</code>, or the first problem found
+	 */
+	public static int validate(ByteBuffer bytes, int offset, int length) {
+		if (length == 0) {
+			return MISSING;
 		}
-		// get the length of code
-		int length = code.length();
 		if (length != 11) {
-			throw new InvalidCodeException("The code is not eleven characters long");
-		}
-		// pattern to check the three upper-case letter
-		String pattern1 = "[A-Z]{3}[A-Z0-9]*";
-		Pattern p1 = Pattern.compile(pattern1);
-		Matcher m1 = p1.matcher(code);
-		if (!m1.find()) {
-			throw new InvalidCodeException("The code does not have three upper-case letter");
-		}
-		// pattern to check the Category Identifier 'U'
-		String pattern2 = "[A-Z]{3}U[A-Z0-9]*";
-		Pattern p2 = Pattern.compile(pattern2);
-		Matcher m2 = p2.matcher(code);
-		if (!m2.find()) {
-			throw new InvalidCodeException("The code does not have Indentifier 'U'");
-		} 
-		// pattern to check if the Serial Number consists of six digits
-		String pattern3 = "[A-Z]{3}U[0-9]{6}[0-9]*";
-		Pattern p3 = Pattern.compile(pattern3);
-		Matcher m3 = p3.matcher(code);
-		if (!m3.find()) {
-			throw new InvalidCodeException("The code does not consist of six digits");
-		}
-		// check the check digit
-		char[] codeArray = code.toCharArray();
-		char[] letterArray = "ABCDEFGHIJKLMNOPQRSTUVWXYZ".toCharArray();
-		int checkDigit = Integer.parseInt(code.substring(code.length() - 1));
-		int sumOfThreeUpperCase = 0;
+			return BAD_LENGTH;
+		}
+		int sum = CATEGORY_VALUE;
 		for (int i = 0; i < 3; i++) {
-			for (int j = 0; j < 26; j++) {
-				if (codeArray[i] == letterArray[j]) {
-					sumOfThreeUpperCase += j;
-				}
+			int letter = bytes.get(offset + i) - 'A';
+			if (letter < 0 || letter >= 26) {
+				return BAD_OWNER_CODE;
 			}
+			sum += letter;
 		}
-		int sumOfDigits = 0;
-		for (int i = 0; i < 6; i++) {
-			sumOfDigits += Character.getNumericValue(codeArray[4+i]);
+		if (bytes.get(offset + 3) != 'U') {
+			return BAD_CATEGORY;
 		}
-		int sum = sumOfThreeUpperCase + 20 + sumOfDigits;
-		
+		for (int i = 4; i < 10; i++) {
+			int digit = bytes.get(offset + i) - '0';
+			if (digit < 0 || digit > 9) {
+				return BAD_SERIAL_NUMBER;
+			}
+			sum += digit;
+		}
+		return bytes.get(offset + 10) - '0' == sum % 10 ? VALID : BAD_CHECK_DIGIT;
+	}
+	
+	/**
+	 * Returns the message the constructor reports for a result of
+	 * <code>validate</code>.
+	 * 
+	 * @param result a result of <code>validate</code> other than <code>VALID</code>
+	 * @return the message describing the problem
+	 */
+	public static String message(int result) {
+		if (result <= VALID || result >= MESSAGES.length) {
+			throw new IllegalArgumentException("Not a validation failure: " + result);
+		}
+		return MESSAGES[result];
+	}
+	
+	/**
+	 * Validates and packs a container code in one pass.
+	 * 
+	 * @return the packed code, or minus the result of validate if it is invalid
+	 */
+	private static long parse(CharSequence code) {
+		if (code == null || code.length() == 0) {
+			return -MISSING;
+		}
+		if (code.length() != 11) {
+			return -BAD_LENGTH;
+		}
+		long owner = 0;
+		int sum = CATEGORY_VALUE;
+		for (int i = 0; i < 3; i++) {
+			int letter = code.charAt(i) - 'A';
+			if (letter < 0 || letter >= 26) {
+				return -BAD_OWNER_CODE;
+			}
+			owner = owner * 26 + letter;
+			sum += letter;
+		}
+		if (code.charAt(3) != 'U') {
+			return -BAD_CATEGORY;
+		}
+		long digits = 0;
+		for (int i = 4; i < 10; i++) {
+			int digit = code.charAt(i) - '0';
+			if (digit < 0 || digit > 9) {
+				return -BAD_SERIAL_NUMBER;
+			}
+			digits = digits * 10 + digit;
+			sum += digit;
+		}
+		int checkDigit = code.charAt(10) - '0';
 		if (checkDigit != sum % 10) {
-			throw new InvalidCodeException("The Check Digit is incorrect");
+			return -BAD_CHECK_DIGIT;
 		}
-		
+		return owner * OWNER_UNIT + digits * 10 + checkDigit;
+	}
+	
+	/**
+	 * Returns the container code with the given packed value, as returned by
+	 * <code>toLong</code> or one of the <code>pack</code> methods.  This is
+	 * much cheaper than parsing the code's string, which is only built if
+	 * <code>toString</code> is called.
+	 * 
+	 * @param packed the packed container code
+	 * @return the container code
+	 * @throws InvalidCodeException if the value is not a packed container code
+	 */
+	public static ContainerCode fromLong(long packed) throws InvalidCodeException {
+		if (packed < 0 || packed >= OWNERS * OWNER_UNIT || checkDigit(packed) != packed % 10) {
+			throw new InvalidCodeException("The packed code is invalid");
+		}
+		return new ContainerCode(null, packed);
+	}
+	
+	/**
+	 * Constructs a container code from a string already known to be valid,
+	 * or from just its packed value if the string is <code>null</code>.
+	 */
+	private ContainerCode(String code, long packed) {
 		this.code = code;
+		this.packed = packed;
+	}
+	
+	/**
+	 * Packs a container code into a <code>long</code> without creating any
+	 * objects.  The owner code, serial number and check digit are packed as
+	 * <code>owner * 10000000 + serial * 10 + checkDigit</code>, where
+	 * <code>owner</code> numbers the owner codes from AAA (0) to ZZZ (17575).
+	 * Two valid codes are equal if and only if their packed values are equal.
+	 * 
+	 * @param code the container code as a sequence of characters
+	 * @return the packed code, or <code>INVALID</code> if the characters are not
+	 * a valid container code
+	 */
+	public static long pack(CharSequence code) {
+		long parsed = parse(code);
+		return parsed < 0 ? INVALID : parsed;
+	}
+	
+	/**
+	 * Packs a container code held as eleven ASCII bytes into a <code>long</code>
+	 * without creating any objects.  See <code>pack(CharSequence)</code>.
+	 * 
+	 * @param bytes the bytes holding the container code
+	 * @param offset the index of the first character of the code
+	 * @return the packed code, or <code>INVALID</code> if the bytes are not
+	 * a valid container code
+	 */
+	public static long pack(byte[] bytes, int offset) {
+		if (offset < 0 || offset + 11 > bytes.length || bytes[offset + 3] != 'U') {
+			return INVALID;
+		}
+		int owner = 0;
+		int sum = CATEGORY_VALUE;
+		for (int i = 0; i < 3; i++) {
+			int letter = bytes[offset + i] - 'A';
+			if (letter < 0 || letter >= 26) {
+				return INVALID;
+			}
+			owner = owner * 26 + letter;
+			sum += letter;
+		}
+		int serial = 0;
+		for (int i = 4; i < 10; i++) {
+			int digit = bytes[offset + i] - '0';
+			if (digit < 0 || digit > 9) {
+				return INVALID;
+			}
+			serial = serial * 10 + digit;
+			sum += digit;
+		}
+		int checkDigit = bytes[offset + 10] - '0';
+		if (checkDigit != sum % 10) {
+			return INVALID;
+		}
+		return owner * OWNER_UNIT + serial * 10 + checkDigit;
+	}
+	
+	/**
+	 * Calculates the check digit of a packed code from its owner code and
+	 * serial number.
+	 */
+	private static long checkDigit(long packed) {
+		int owner = (int) (packed / OWNER_UNIT);
+		int serial = (int) (packed % OWNER_UNIT / 10);
+		int sum = owner / 676 + owner / 26 % 26 + owner % 26 + CATEGORY_VALUE;
+		while (serial > 0) {
+			sum += serial % 10;
+			serial /= 10;
+		}
+		return sum % 10;
+	}
+	
+	/**
+	 * Converts a packed code back to its eleven character form.
+	 */
+	private static String unpack(long packed) {
+		char[] chars = new char[11];
+		int owner = (int) (packed / OWNER_UNIT);
+		chars[0] = (char) ('A' + owner / 676);
+		chars[1] = (char) ('A' + owner / 26 % 26);
+		chars[2] = (char) ('A' + owner % 26);
+		chars[3] = 'U';
+		long digits = packed % OWNER_UNIT;
+		for (int i = 10; i > 3; i--) {
+			chars[i] = (char) ('0' + digits % 10);
+			digits /= 10;
+		}
+		return new String(chars);
 	}
 	
+	/**
+	 * Returns this container code packed into a <code>long</code>.  See
+	 * <code>pack(CharSequence)</code> for the layout.
+	 * 
+	 * @return the packed code
+	 */
+	public long toLong() {
+		return packed;
+	}
 
 
 
@@ -163,6 +405,9 @@ public class ContainerCode {
 	 */
 	@Override
 	public String toString() {
+		if (code == null) {
+			code = unpack(packed); // codes made by fromLong get their string when first needed
+		}
 		return code;
 	}
 
@@ -178,11 +423,19 @@ public class ContainerCode {
 	@Override
 	public boolean equals(Object obj) {
 		//Kian
-		if (obj.toString() == code) {
-			return true;
+		if (obj instanceof ContainerCode) {
+			return ((ContainerCode) obj).packed == packed;
 		} else {
 			return false;
 		}
 	}
+	
+	/* (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int) (packed ^ (packed >>> 32));
+	}
 }
 
@@ -21,4 +21,17 @@ public abstract class CargoException extends Exception {
 	public CargoException(String message) {
 		super(message);	
 	}
+	
+	/**
+	 * Constructs a new CargoException object which may skip recording the
+	 * stack trace.  Recording it is most of the cost of creating an
+	 * exception, and is not worth it for an exception which is expected
+	 * and handled close to where it is thrown.
+	 * 
+	 * @param message an informative message describing the problem encountered
+	 * @param withStackTrace whether to record the stack trace
+	 */
+	protected CargoException(String message, boolean withStackTrace) {
+		super(message, null, true, withStackTrace);
+	}
 }
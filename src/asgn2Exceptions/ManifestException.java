@@ -20,5 +20,18 @@ public class ManifestException extends CargoException {
 	public ManifestException(String message) {
 		super("ManifestException: " + message);
 	}
+	
+	/**
+	 * Constructs a new ManifestException object which may skip recording
+	 * the stack trace, e.g., for a rejection which the caller handles
+	 * itself.  See <code>CargoManifest.tryLoad</code> for a way to avoid
+	 * the exception altogether.
+	 * 
+	 * @param message an informative message describing the problem encountered
+	 * @param withStackTrace whether to record the stack trace
+	 */
+	public ManifestException(String message, boolean withStackTrace) {
+		super("ManifestException: " + message, withStackTrace);
+	}
 
 }
@@ -13,6 +13,7 @@ import asgn2Containers.FreightContainer;
 import asgn2Containers.RefrigeratedContainer;
 import asgn2Exceptions.ManifestException;
 import asgn2Manifests.CargoManifest;
+import asgn2Manifests.ManifestSnapshot;
 
 /**
  * Creates a JPanel in which graphical components are laid out to represent the cargo manifest.
@@ -85,13 +86,25 @@ public class CargoCanvas extends JPanel {
 		g.drawString("Refrigerated", 400, 10);
 		g.drawString("Find", 520, 10);
     	
-    	for (int i = 0; i < cargo.getStackNumber(); i++) {
+    	// draw one consistent version of the manifest; snapshot() has to run on the thread changing the manifest,
+    	// which is safe here only because the GUI loads and unloads on the event dispatch thread, which paints too
+    	ManifestSnapshot snapshot = cargo.snapshot();
+    	// only the stacks in the clip are drawn, so only those are read from an opened manifest file
+    	int first = 0;
+    	int last = snapshot.getStackNumber() - 1;
+    	Rectangle clip = g.getClipBounds();
+    	if (clip != null) {
+    		if (clip.y > 70) {
+    			first = (clip.y - 70) / 60 + 1;		// stack i is drawn from y = i*60 + 20 to i*60 + 70
+    		}
+    		last = Math.min(last, (clip.y + clip.height - 21) / 60);
+    	}
+    	for (int i = first; i <= last; i++) {
     		g.setColor(Color.GRAY);
     		g.fillRect(3, i*60 + 20, 3, 50);
     		try {
-				FreightContainer[] containers = cargo.toArray(i);
-				for (int j = 0; j < containers.length; j++) {
-					drawContainer(g, containers[j], j*110 + 20, i*60 + 20);
+				for (int j = 0; j < snapshot.getHeight(i); j++) {
+					drawContainer(g, snapshot.getContainer(i, j), j*110 + 20, i*60 + 20);
 				}
 			} catch (ManifestException e) { }
     		
@@ -129,7 +142,7 @@ public class CargoCanvas extends JPanel {
     	}
     	
     	if (toFind != null) {
-    		if (container.getCode().toString().equals(toFind.toString())) {
+    		if (container.getCode().equals(toFind)) {
         		g.setColor(new Color(122, 122, 122)); // gray
             	g.fillRect(x, y, 100, 50);
         	}
@@ -59,6 +59,6 @@ public class CargoTextArea extends JTextArea {
      */
     public void updateDisplay() {
     	//Kian
-    	setText(cargo.toString(toFind));
+    	setText(cargo.snapshot().toString(toFind)); // on the event dispatch thread, which also changes the manifest
     }
 }
@@ -1,9 +1,12 @@
 package asgn2Manifests;
 
+import java.io.IOException;
 import java.util.*;
 
 import asgn2Codes.ContainerCode;
 import asgn2Containers.FreightContainer;
+import asgn2Containers.RefrigeratedContainer;
+import asgn2Exceptions.InvalidContainerException;
 import asgn2Exceptions.ManifestException;
 
 /**
@@ -39,23 +42,71 @@ import asgn2Exceptions.ManifestException;
  * Furthermore, since the containers are moved by an overhead
  * crane, a container can be unloaded only if it is on top of
  * a stack.
+ * <p>
+ * Once the position of each stack on deck has been given with
+ * <code>setStackCoordinates</code>, a container may also be loaded
+ * only if doing so keeps the ship's trim and list moments within
+ * their limits.
  *  
  * @author CAB302 Yunkai (Kian) Zhu n9253921
  * @version 1.0
  */
 public class CargoManifest {
 	
+	// stack type of a stack which has no container
+	static final byte EMPTY = 0;
+	// number of changes remembered for changesSince() unless the constructor is given another
+	static final int CHANGE_LOG_SIZE = 4096;
+	
 	int numStacks;
 	int maxHeight;
 	int maxWeight;
-	// used to store all the containers loaded group by stack [[contain_1, contain_2], [contain_3], ...]
-	ArrayList<ArrayList<FreightContainer>> containers; 
-	// used to store the type of each stack which has container(s), type will clear when it has no container
-	HashMap<Integer, String> stackType;
-	// used to store the codes of loaded containers
-	HashMap<String, Integer> codes;
+	// used to store all the containers loaded, the container at height h of stack s is in slot s * maxHeight + h
+	// (one reference per slot from the start, so an empty ship already holds numStacks * maxHeight of them)
+	FreightContainer[] slots;
+	// used to store the number of containers in each stack
+	int[] heights;
+	// used to store the type of each stack as an index into typeNames, EMPTY when it has no container
+	byte[] stackTypes;
+	// used to number the container types seen so far, typeNames.get(t) is the name of type t (index 0 is EMPTY)
+	ArrayList<String> typeNames;
+	// used to store the slot of each loaded container, keyed by its packed code
+	LongIntHashMap codes;
+	// used to find a stack for a new container: the stacks of each type which still have room, ordered by stack number
+	ArrayList<StackSet> openStacks;
+	// used to find a stack for a new container: the stacks which have no container, ordered by stack number
+	StackSet emptyStacks;
 	// used to store current weight
 	int currentWeight;
+	// used to store the total weight of the containers in each stack
+	int[] stackWeights;
+	// used to store the room left in the stacks of each type, indexed by type number (an empty stack counts for none)
+	int[] typeRoom;
+	// used to store the number of stacks which have no container
+	int emptyStackCount;
+	// used to find the tops of the stacks: the stacks which have a container, ordered by stack number
+	StackSet loadedStacks;
+	// used to number the states of the manifest, increased on every change
+	long version;
+	// used by snapshot(): the stacks changed since the last snapshot, and a flag per stack for being in that list
+	int[] changedStacks;
+	int changedCount;
+	boolean[] stackChanged;
+	// used by snapshot(): the latest snapshot, whose unchanged stacks are shared with the next one
+	ManifestSnapshot lastSnapshot;
+	// used by changesSince(): a ring of the latest changes, the one producing version v is at index v % length
+	byte[] changeKinds;
+	FreightContainer[] changeContainers;
+	int[] changeSlots;
+	// used by changesSince(): the oldest version the changes are remembered from, however many there are
+	long changesFrom;
+	// used by a manifest opened by ManifestFile.open: reads the stacks not yet in slots, null if there are none
+	StackPager pager;
+	boolean[] stackPaged;
+	// used by find(): the secondary indexes, null until find() is first called
+	ManifestIndexes indexes;
+	// used to keep the ship balanced: the stack coordinates, limits and moments, null until setStackCoordinates()
+	ShipBalance balance;
 	
 
 	/**
@@ -73,10 +124,31 @@ public class CargoManifest {
 	 * @param maxWeight the maximum weight of containers allowed on board 
 	 * (in tonnes)
 	 * @throws ManifestException if negative numbers are given for any of the
-	 * parameters
+	 * parameters, or if the deck is too large to be held in memory
 	 */
 	public CargoManifest(Integer numStacks, Integer maxHeight, Integer maxWeight)
 	throws ManifestException {
+		this(numStacks, maxHeight, maxWeight, CHANGE_LOG_SIZE);
+	}
+
+	/**
+	 * Constructs a new cargo manifest, as the constructor above does, which
+	 * remembers the given number of changes for <code>changesSince</code>.
+	 * 
+	 * @param numStacks the number of stacks that can be accommodated on deck
+	 * @param maxHeight the maximum allowable height of any stack
+	 * @param maxWeight the maximum weight of containers allowed on board 
+	 * (in tonnes)
+	 * @param changeLogSize the number of changes remembered
+	 * @throws ManifestException if negative numbers are given for any of the
+	 * parameters, no changes are to be remembered, or the deck is too large
+	 * to be held in memory
+	 */
+	public CargoManifest(Integer numStacks, Integer maxHeight, Integer maxWeight, int changeLogSize)
+	throws ManifestException {
+		if (changeLogSize < 1) {
+			throw new ManifestException("Invalid Change Log Size");
+		}
 		if (numStacks < 0) {
 			throw new ManifestException("Invalid Stacks Number");
 		}
@@ -86,19 +158,34 @@ public class CargoManifest {
 		if (maxWeight < 0) {
 			throw new ManifestException("Invalid Max Weight");
 		}
+		if ((long) numStacks * maxHeight > Integer.MAX_VALUE - 8) {
+			throw new ManifestException("The deck is too large");
+		}
 		
 		this.numStacks = numStacks;
 		this.maxHeight = maxHeight;
 		this.maxWeight = maxWeight;
 		
 		currentWeight = 0;
-		containers = new ArrayList<ArrayList<FreightContainer>>();
-		stackType = new HashMap<Integer, String>();
-		codes = new HashMap<String, Integer>();
-		
-		for (int i = 0; i < numStacks; i++) {
-			containers.add(new ArrayList<FreightContainer>()); // add empty list of element, can be used by get index later when uploading
-		}
+		slots = new FreightContainer[numStacks * maxHeight];
+		heights = new int[numStacks];
+		stackTypes = new byte[numStacks];
+		typeNames = new ArrayList<String>();
+		typeNames.add(null);
+		codes = new LongIntHashMap(16);
+		openStacks = new ArrayList<StackSet>();
+		openStacks.add(null);
+		emptyStacks = new StackSet(numStacks, true);
+		stackWeights = new int[numStacks];
+		typeRoom = new int[Byte.MAX_VALUE + 1];
+		emptyStackCount = numStacks;
+		loadedStacks = new StackSet(numStacks, false);
+		changedStacks = new int[numStacks];
+		stackChanged = new boolean[numStacks];
+		lastSnapshot = new ManifestSnapshot(this);
+		changeKinds = new byte[changeLogSize];
+		changeContainers = new FreightContainer[changeLogSize];
+		changeSlots = new int[changeLogSize];
 	}
 
 	/**
@@ -108,41 +195,372 @@ public class CargoManifest {
 	 * @param newContainer the new freight container to be loaded
 	 * @throws ManifestException if adding this container would exceed
 	 * the ship's weight limit; if a container with the same code is
-	 * already on board; or if no suitable space can be found for this
-	 * container
+	 * already on board; if no suitable space can be found for this
+	 * container; or if putting it in that space would put the ship out
+	 * of balance
 	 */
 	public void loadContainer(FreightContainer newContainer) throws ManifestException {
+		ManifestResult result = tryLoad(newContainer);
+		if (result != ManifestResult.DONE) {
+			throw new ManifestException(result.getMessage());
+		}
+	}
+	
+	/**
+	 * Loads a freight container onto the ship as <code>loadContainer</code>
+	 * does, but reports a rejection by its result instead of an exception.
+	 * A rejection allocates nothing, so this is the cheaper way to make
+	 * attempts which are often rejected.
+	 * 
+	 * @param newContainer the new freight container to be loaded
+	 * @return <code>DONE</code> if the container was loaded, otherwise why not
+	 */
+	public ManifestResult tryLoad(FreightContainer newContainer) {
 		if (newContainer.getGrossWeight() + currentWeight > maxWeight) {
+			return ManifestResult.WEIGHT_LIMIT;
+		}
+		
+		long code = newContainer.getCode().toLong();
+		if (codes.containsKey(code)) {
+			return ManifestResult.DUPLICATE_CODE;
+		}
+		int type = typeNumber(newContainer.getType());
+		if (type < 0) {
+			return ManifestResult.TOO_MANY_TYPES;
+		}
+		int stackNumber = nearestStack((byte) type);
+		if (stackNumber < 0) {
+			return ManifestResult.NO_SPACE;
+		}
+		if (balance != null && !balance.allows(stackNumber, newContainer.getGrossWeight())) {
+			return ManifestResult.OUT_OF_BALANCE;
+		}
+		codes.put(code, place(newContainer, (byte) type, stackNumber));
+		return ManifestResult.DONE;
+	}
+	
+	/**
+	 * Loads a batch of freight containers onto the ship, each as if by
+	 * <code>loadContainer</code> in the order given.  The batch is loaded
+	 * either completely or not at all: if any container cannot be loaded the
+	 * manifest is left as it was.  The weight limit, the codes, the number
+	 * of container types and the stack each container would go to are
+	 * checked for the whole batch before anything is placed, so a rejected
+	 * batch changes neither the version nor the changes reported by
+	 * <code>changesSince</code>.
+	 * 
+	 * @param newContainers the new freight containers to be loaded
+	 * @return the position each container was loaded at, in the order given
+	 * @throws ManifestException if adding the batch would exceed the ship's
+	 * weight limit; if a container with the same code is already on board or
+	 * appears twice in the batch; if the batch brings too many new container
+	 * types; if no suitable space can be found for one of the containers; or
+	 * if putting one in that space would put the ship out of balance
+	 */
+	public List<ContainerPosition> loadAll(Collection<FreightContainer> newContainers) throws ManifestException {
+		long batchWeight = 0;
+		LongIntHashMap batchCodes = new LongIntHashMap(newContainers.size());
+		// the types not numbered yet, which are only numbered once the batch is being placed
+		Set<String> newTypes = new HashSet<String>();
+		for (FreightContainer newContainer : newContainers) {
+			batchWeight += newContainer.getGrossWeight();
+			long code = newContainer.getCode().toLong();
+			if (codes.containsKey(code) || batchCodes.containsKey(code)) {
+				throw new ManifestException("A duplicate code has been found");
+			}
+			batchCodes.put(code, 0);
+			if (typeNames.indexOf(newContainer.getType()) < 1) {
+				newTypes.add(newContainer.getType());
+			}
+		}
+		if (batchWeight + currentWeight > maxWeight) {
 			throw new ManifestException("Exceed the ship's weight limit");
 		}
+		if (typeNames.size() + newTypes.size() > Byte.MAX_VALUE + 1) {
+			throw new ManifestException(ManifestResult.TOO_MANY_TYPES.getMessage());
+		}
 		
-		if (codes.containsKey(newContainer.getCode().toString())) {
-			throw new ManifestException("A duplicate code has been found");
-		}
-		for (int i = 0; i < numStacks; i++) {
-			if (stackType.get(i) != null) {
-				if (stackType.get(i).equals(newContainer.getType())) {
-					if (containers.get(i).size() < maxHeight) {
-						containers.get(i).add(newContainer);
-						codes.put(newContainer.getCode().toString(), i);
-						currentWeight += newContainer.getGrossWeight();
-						break;
-					} else if (i == numStacks - 1) { // if there's no more space
-						throw new ManifestException("No suitable space can be found for this container");
-					}
-				} else if (i == numStacks - 1) {  // if there's no matching type
-					throw new ManifestException("No suitable space can be found for this container");
+		int[] stackNumbers = batchStacks(newContainers);
+		
+		List<ContainerPosition> positions = new ArrayList<ContainerPosition>(stackNumbers.length);
+		int count = 0;
+		for (FreightContainer newContainer : newContainers) {
+			byte type = typeOf(newContainer.getType());		// cannot fail, the new types were counted above
+			int slot = place(newContainer, type, stackNumbers[count++]);
+			codes.put(newContainer.getCode().toLong(), slot);
+			positions.add(new ContainerPosition(slot / maxHeight, slot % maxHeight));
+		}
+		return positions;
+	}
+	
+	/**
+	 * Works out the stack each container of a batch goes to when the batch
+	 * is loaded in order, each container on the stack
+	 * <code>nearestStack</code> would choose, without changing the manifest.
+	 * A type's stacks with room are filled lowest first, and an empty stack
+	 * is only taken by a type when it is lower than all of them, so for each
+	 * type it is enough to follow the stack being filled: at most one stack
+	 * the batch has taken, which is the lowest, and then the type's open
+	 * stacks in order.
+	 * 
+	 * @param newContainers the batch, whose new types have been counted
+	 * @return the stack of each container, in the batch's order
+	 * @throws ManifestException if no suitable space can be found for one of
+	 * the containers, or putting one in that space would put the ship out
+	 * of balance
+	 */
+	private int[] batchStacks(Collection<FreightContainer> newContainers) throws ManifestException {
+		int[] stackNumbers = new int[newContainers.size()];
+		List<String> newTypes = new ArrayList<String>();
+		// for each type number: the empty stack the batch is filling, the type's next open stack, and their heights
+		int[] taken = new int[Byte.MAX_VALUE + 1];
+		int[] takenHeight = new int[Byte.MAX_VALUE + 1];
+		int[] open = new int[Byte.MAX_VALUE + 1];
+		int[] openHeight = new int[Byte.MAX_VALUE + 1];
+		boolean[] seen = new boolean[Byte.MAX_VALUE + 1];
+		int nextEmpty = 0;		// no stack below this one is still empty
+		ShipBalance moments = balance == null ? null : new ShipBalance(balance);
+		int count = 0;
+		for (FreightContainer newContainer : newContainers) {
+			int type = typeNames.indexOf(newContainer.getType());
+			if (type < 1) {
+				if (!newTypes.contains(newContainer.getType())) {
+					newTypes.add(newContainer.getType());
+				}
+				type = typeNames.size() + newTypes.indexOf(newContainer.getType());
+			}
+			if (!seen[type]) {
+				seen[type] = true;
+				taken[type] = -1;
+				open[type] = type < openStacks.size() ? openStacks.get(type).first() : -1;
+				openHeight[type] = open[type] < 0 ? 0 : heights[open[type]];
+			}
+			
+			int stackNumber = taken[type] >= 0 ? taken[type] : open[type];
+			int emptyStack = emptyStacks.next(nextEmpty);
+			if (maxHeight < 1) {
+				stackNumber = -1;
+			} else if (emptyStack >= 0 && (stackNumber < 0 || emptyStack < stackNumber)) {
+				stackNumber = taken[type] = emptyStack;
+				takenHeight[type] = 0;
+				nextEmpty = emptyStack + 1;
+			}
+			if (stackNumber < 0) {
+				throw new ManifestException(ManifestResult.NO_SPACE.getMessage());
+			}
+			if (moments != null) {
+				if (!moments.allows(stackNumber, newContainer.getGrossWeight())) {
+					throw new ManifestException(ManifestResult.OUT_OF_BALANCE.getMessage());
 				}
-			} else {
-				stackType.put(i, newContainer.getType()); // create a stack type to that stack
-				containers.get(i).add(newContainer);	// add container to that stack
-				codes.put(newContainer.getCode().toString(), i); // add code to local
-				currentWeight += newContainer.getGrossWeight();
-				break;
+				moments.add(stackNumber, newContainer.getGrossWeight());
 			}
 			
+			if (stackNumber == taken[type]) {
+				if (++takenHeight[type] == maxHeight) {
+					taken[type] = -1;
+				}
+			} else if (++openHeight[type] == maxHeight) {
+				open[type] = openStacks.get(type).next(stackNumber + 1);
+				openHeight[type] = open[type] < 0 ? 0 : heights[open[type]];
+			}
+			stackNumbers[count++] = stackNumber;
 		}
+		return stackNumbers;
+	}
 	
+	/**
+	 * Puts a container on top of a stack, which must be empty or hold
+	 * containers of the same type and have room left, and updates the
+	 * stack indexes and the ship's weight.  The caller adds the container's
+	 * code to <code>codes</code>.
+	 * 
+	 * @param newContainer the container
+	 * @param type the container's type number
+	 * @param stackNumber the stack
+	 * @return the slot the container was put in
+	 */
+	int place(FreightContainer newContainer, byte type, int stackNumber) {
+		pageIn(stackNumber);
+		if (heights[stackNumber] == 0) {
+			emptyStacks.remove(stackNumber);
+			stackTypes[stackNumber] = type; // create a stack type to that stack
+			openStacks.get(type).add(stackNumber);
+			loadedStacks.add(stackNumber);
+			emptyStackCount--;
+			typeRoom[type] += maxHeight;
+		}
+		typeRoom[type]--;
+		stackWeights[stackNumber] += newContainer.getGrossWeight();
+		if (balance != null) {
+			balance.add(stackNumber, newContainer.getGrossWeight());
+		}
+		int slot = stackNumber * maxHeight + heights[stackNumber];
+		slots[slot] = newContainer;
+		if (indexes != null) {
+			indexes.add(slot, newContainer, type);
+		}
+		heights[stackNumber]++;
+		if (heights[stackNumber] >= maxHeight) {
+			openStacks.get(type).remove(stackNumber); // the stack is full now
+		}
+		currentWeight += newContainer.getGrossWeight();
+		changed(ManifestChange.Kind.LOAD, newContainer, slot);
+		return slot;
+	}
+	
+	/**
+	 * Takes the top container off a stack, which must not be empty, and
+	 * updates the indexes and the ship's weight.
+	 * 
+	 * @param stackNumber the stack
+	 * @return the container taken off
+	 */
+	FreightContainer removeTop(int stackNumber) {
+		pageIn(stackNumber);
+		int top = stackNumber * maxHeight + heights[stackNumber] - 1;
+		FreightContainer topContainer = slots[top];
+		slots[top] = null;								// remove it from slots
+		heights[stackNumber]--;
+		currentWeight -= topContainer.getGrossWeight();	// minus the current weight
+		byte type = stackTypes[stackNumber];
+		if (indexes != null) {
+			indexes.remove(top, topContainer, type);
+		}
+		stackWeights[stackNumber] -= topContainer.getGrossWeight();
+		if (balance != null) {
+			balance.add(stackNumber, -topContainer.getGrossWeight());
+		}
+		typeRoom[type]++;
+		if (heights[stackNumber] == 0) {
+			stackTypes[stackNumber] = EMPTY;			// if it is the last container, remove the type of that stack
+			openStacks.get(type).remove(stackNumber);
+			emptyStacks.add(stackNumber);
+			loadedStacks.remove(stackNumber);
+			emptyStackCount++;
+			typeRoom[type] -= maxHeight;
+		} else {
+			openStacks.get(type).add(stackNumber);		// the stack has room again
+		}
+		codes.remove(topContainer.getCode().toLong());
+		changed(ManifestChange.Kind.UNLOAD, topContainer, top);
+		return topContainer;
+	}
+	
+	/**
+	 * Reads a stack of a manifest opened by <code>ManifestFile.open</code>
+	 * into <code>slots</code>, unless it is there already.  Every method
+	 * reading or changing the containers of a stack calls this first.
+	 * 
+	 * @param stackNumber the stack
+	 * @throws IllegalStateException if the stack's records are corrupt
+	 */
+	void pageIn(int stackNumber) {
+		if (pager != null && !stackPaged[stackNumber]) {
+			int bottom = stackNumber * maxHeight;
+			pager.read(stackNumber, slots, bottom);
+			int weight = 0;
+			for (int i = bottom; i < bottom + heights[stackNumber]; i++) {
+				if (!slots[i].getType().equals(typeNames.get(stackTypes[stackNumber]))) {
+					throw new IllegalStateException("Corrupt manifest file: stack " + stackNumber
+							+ " breaks the loading rules");
+				}
+				weight += slots[i].getGrossWeight();
+			}
+			if (weight != stackWeights[stackNumber]) {
+				throw new IllegalStateException("Corrupt manifest file: wrong weight of stack " + stackNumber);
+			}
+			stackPaged[stackNumber] = true;
+		}
+	}
+	
+	/**
+	 * Reads every stack not read yet, for code which goes through all of
+	 * <code>slots</code>.
+	 */
+	void pageInAll() {
+		if (pager != null) {
+			for (int i = 0; i < numStacks; i++) {
+				pageIn(i);
+			}
+			pager = null;
+			stackPaged = null;
+		}
+	}
+	
+	/**
+	 * Records a change to a slot, for the version number, the next snapshot
+	 * and the change feed.
+	 * 
+	 * @param kind the kind of change
+	 * @param container the container loaded or unloaded, or with its new setpoint
+	 * @param slot the slot which changed
+	 */
+	void changed(ManifestChange.Kind kind, FreightContainer container, int slot) {
+		version++;
+		int change = (int) (version % changeKinds.length);
+		changeKinds[change] = (byte) kind.ordinal();
+		changeContainers[change] = container;
+		changeSlots[change] = slot;
+		int stackNumber = slot / maxHeight;
+		if (!stackChanged[stackNumber]) {
+			stackChanged[stackNumber] = true;
+			changedStacks[changedCount++] = stackNumber;
+		}
+	}
+	
+	/**
+	 * Finds the stack closest to the bridge which can take a container of
+	 * the given type, i.e., either the lowest numbered stack of that type which
+	 * is not full yet or the lowest numbered empty stack, whichever comes first.
+	 * 
+	 * @param type the type of the container to be loaded
+	 * @return the stack number, or -1 if there is no suitable stack
+	 */
+	private int nearestStack(byte type) {
+		if (maxHeight < 1) {
+			return -1;
+		}
+		int openStack = openStacks.get(type).first();
+		int emptyStack = emptyStacks.first();
+		if (openStack < 0 || emptyStack < 0) {
+			return Math.max(openStack, emptyStack);
+		}
+		return Math.min(openStack, emptyStack);
+	}
+	
+	/**
+	 * Returns the number used for the given container type in
+	 * <code>stackTypes</code>, numbering the type the first time it is seen.
+	 * 
+	 * @param typeName the container type, as returned by <code>getType</code>
+	 * @return the type number (never <code>EMPTY</code>)
+	 * @throws ManifestException if there are too many container types
+	 */
+	byte typeOf(String typeName) throws ManifestException {
+		int type = typeNumber(typeName);
+		if (type < 0) {
+			throw new ManifestException(ManifestResult.TOO_MANY_TYPES.getMessage());
+		}
+		return (byte) type;
+	}
+	
+	/**
+	 * Does the work of <code>typeOf</code>, without throwing.
+	 * 
+	 * @param typeName the container type, as returned by <code>getType</code>
+	 * @return the type number, or -1 if there are too many container types
+	 */
+	private int typeNumber(String typeName) {
+		int type = typeNames.indexOf(typeName);
+		if (type > 0) {
+			return type;
+		}
+		if (typeNames.size() > Byte.MAX_VALUE) {
+			return -1;
+		}
+		typeNames.add(typeName);
+		openStacks.add(new StackSet(numStacks, false));
+		return typeNames.size() - 1;
 	}
 
 
@@ -156,24 +574,104 @@ public class CargoManifest {
 	 * the ship at all)
 	 */
 	public void unloadContainer(ContainerCode containerId) throws ManifestException {
-		if (!codes.containsKey(containerId.toString())) {
-			throw new ManifestException("No such container");
+		ManifestResult result = tryUnload(containerId);
+		if (result != ManifestResult.DONE) {
+			throw new ManifestException(result.getMessage());
 		}
-		int stackNumber = codes.get(containerId.toString());
-		FreightContainer topContainer = containers.get(stackNumber).get(containers.get(stackNumber).size() - 1);
-		if (topContainer.getCode().toString().equals(containerId.toString())) {
-			containers.get(stackNumber).remove(containers.get(stackNumber).size() - 1);	// remove it from containers
-			currentWeight -= topContainer.getGrossWeight();				// minus the current weight
-			if (containers.get(stackNumber).size() == 0) {
-				stackType.remove(codes.get(containerId.toString()));		// if it is the last container, remove the type of that stack
-			}
-			codes.remove(containerId.toString());
+	}
+	
+	/**
+	 * Unloads a particular container from the ship as
+	 * <code>unloadContainer</code> does, but reports a rejection by its
+	 * result instead of an exception.  A rejection allocates nothing.
+	 * 
+	 * @param containerId the code of the container to be unloaded
+	 * @return <code>DONE</code> if the container was unloaded, otherwise why not
+	 */
+	public ManifestResult tryUnload(ContainerCode containerId) {
+		long code = containerId.toLong();
+		int slot = codes.get(code);
+		if (slot == LongIntHashMap.MISSING) {
+			return ManifestResult.NOT_ON_BOARD;
+		}
+		int stackNumber = slot / maxHeight;
+		if (slot == stackNumber * maxHeight + heights[stackNumber] - 1) {
+			removeTop(stackNumber);
+			return ManifestResult.DONE;
 		} else {
-			throw new ManifestException("The container is not on the top of that stack");
+			return ManifestResult.NOT_ON_TOP;
 		}
 	}
-
 	
+	/**
+	 * Moves a container from the top of its stack to the top of another
+	 * stack, which must be empty or hold containers of the same type and
+	 * have room left, e.g., to carry out a plan made by
+	 * <code>DigOutPlanner</code>.  The move is recorded as an unload followed
+	 * by a load.
+	 * 
+	 * @param containerId the code of the container to be moved
+	 * @param toStack the stack to put it on
+	 * @throws ManifestException if the container is not on the top of a
+	 * stack (including the case where it's not on board the ship at all), if
+	 * there is no such stack, if the stack cannot take the container, or if
+	 * the move would put the ship out of balance
+	 */
+	public void restowContainer(ContainerCode containerId, int toStack) throws ManifestException {
+		long code = containerId.toLong();
+		int slot = codes.get(code);
+		if (slot == LongIntHashMap.MISSING) {
+			throw new ManifestException(ManifestResult.NOT_ON_BOARD.getMessage());
+		}
+		int stackNumber = slot / maxHeight;
+		if (slot != stackNumber * maxHeight + heights[stackNumber] - 1) {
+			throw new ManifestException(ManifestResult.NOT_ON_TOP.getMessage());
+		}
+		if (toStack < 0 || toStack > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+		byte type = stackTypes[stackNumber];
+		if (toStack == stackNumber || heights[toStack] >= maxHeight
+				|| (heights[toStack] > 0 && stackTypes[toStack] != type)) {
+			throw new ManifestException("The container cannot be put on that stack");
+		}
+		pageIn(stackNumber);
+		if (balance != null && !balance.allowsMove(stackNumber, toStack, slots[slot].getGrossWeight())) {
+			throw new ManifestException(ManifestResult.OUT_OF_BALANCE.getMessage());
+		}
+		FreightContainer container = removeTop(stackNumber);
+		codes.put(code, place(container, type, toStack));
+	}
+
+
+	/**
+	 * Resets the thermostat of a refrigerated container on board.  The
+	 * container is replaced by a copy with the new temperature, so earlier
+	 * snapshots of the manifest keep the temperature they were taken with.
+	 *
+	 * @param containerId the code of the container
+	 * @param temperature the new temperature (in degrees Celsius)
+	 * @throws ManifestException if the container is not on board, is not
+	 * refrigerated or the temperature is missing
+	 */
+	public void setTemperature(ContainerCode containerId, Integer temperature) throws ManifestException {
+		int slot = codes.get(containerId.toLong());
+		if (slot == LongIntHashMap.MISSING) {
+			throw new ManifestException("No such container");
+		}
+		pageIn(slot / maxHeight);
+		if (!(slots[slot] instanceof RefrigeratedContainer)) {
+			throw new ManifestException("The container is not refrigerated");
+		}
+		try {
+			slots[slot] = new RefrigeratedContainer(slots[slot].getCode(), slots[slot].getGrossWeight(), temperature);
+		} catch (InvalidContainerException e) {
+			throw new ManifestException(e.getMessage());
+		}
+		changed(ManifestChange.Kind.SETPOINT, slots[slot], slot);
+	}
+
+
 	/**
 	 * Returns which stack holds a particular container, if any.  The
 	 * container of interest is identified by its unique
@@ -185,10 +683,11 @@ public class CargoManifest {
 	 * if the container is not on board
 	 */
 	public Integer whichStack(ContainerCode queryContainer) {
-		if (!codes.containsKey(queryContainer.toString())) {
+		int slot = codes.get(queryContainer.toLong());
+		if (slot == LongIntHashMap.MISSING) {
 			return null;
 		} else {
-			return codes.get(queryContainer.toString());
+			return slot / maxHeight;
 		}
 	}
 
@@ -206,19 +705,68 @@ public class CargoManifest {
 	 * if the container is not on board
 	 */
 	public Integer howHigh(ContainerCode queryContainer) {
-		if (!codes.containsKey(queryContainer.toString())) {
+		int slot = codes.get(queryContainer.toLong());
+		if (slot == LongIntHashMap.MISSING) {
+			return null;
+		} else {
+			return slot % maxHeight;
+		}
+	}
+	
+	
+	/**
+	 * Returns the position of a particular container, i.e., both the stack
+	 * it is in and how high in that stack it is.  The container of interest
+	 * is identified by its unique code.  Constant <code>null</code> is
+	 * returned if the container is not on board.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's position, or <code>null</code> if the container
+	 * is not on board
+	 */
+	public ContainerPosition locate(ContainerCode queryContainer) {
+		int slot = codes.get(queryContainer.toLong());
+		if (slot == LongIntHashMap.MISSING) {
 			return null;
 		} else {
-			int stackNumber = codes.get(queryContainer.toString());
-			int index = -1;
-			for (int i = 0; i < containers.get(stackNumber).size(); i++) {
-				if (containers.get(stackNumber).get(i).getCode().toString().equals(queryContainer.toString())) {
-					index = i;
-					break;
+			return new ContainerPosition(slot / maxHeight, slot % maxHeight);
+		}
+	}
+	
+	/**
+	 * Finds the containers on board which match a query, e.g., all the
+	 * containers of an owner or all those over a weight.  The manifest keeps
+	 * secondary indexes by owner, type, gross weight and dangerous goods
+	 * category for this, so a selective query takes time in the number of
+	 * containers it selects rather than the size of the ship.  The indexes
+	 * are built by the first call and kept up to date from then on.
+	 * 
+	 * @param query the conditions the containers must meet
+	 * @return the matching containers, in stack order and bottom first
+	 */
+	public List<FreightContainer> find(ContainerQuery query) {
+		if (indexes == null) {
+			pageInAll();
+			indexes = new ManifestIndexes(slots.length);
+			for (int i = 0; i < numStacks; i++) {
+				for (int slot = i * maxHeight; slot < i * maxHeight + heights[i]; slot++) {
+					indexes.add(slot, slots[slot], stackTypes[i]);
 				}
 			}
-			return index;
 		}
+		int type = -1;
+		if (query.type != null) {
+			type = typeNames.indexOf(query.type);
+			if (type < 1) {
+				return new ArrayList<FreightContainer>();		// no container of the type has been loaded
+			}
+		}
+		int[] found = indexes.find(query, type, slots);
+		List<FreightContainer> containers = new ArrayList<FreightContainer>(found.length);
+		for (int slot : found) {
+			containers.add(slots[slot]);
+		}
+		return containers;
 	}
 
 
@@ -234,33 +782,209 @@ public class CargoManifest {
 		if (stackNo < 0 || stackNo > numStacks - 1) {
 			throw new ManifestException("No such stack");
 		}
-		FreightContainer[] array = new FreightContainer[containers.get(stackNo).size()];
-		for (int i = 0; i < containers.get(stackNo).size(); i++) {
-			array[i] = containers.get(stackNo).get(i);
-		}
+		pageIn(stackNo);
+		FreightContainer[] array = new FreightContainer[heights[stackNo]];
+		System.arraycopy(slots, stackNo * maxHeight, array, 0, array.length);
 		return array;
 	}
+	
+	/**
+	 * Returns the number of containers in a stack.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @return the stack's height
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public int getStackHeight(int stackNo) throws ManifestException {
+		if (stackNo < 0 || stackNo > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+		return heights[stackNo];
+	}
+	
+	/**
+	 * Returns the total gross weight of the containers in a stack.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @return the stack's weight (in tonnes)
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public int getStackWeight(int stackNo) throws ManifestException {
+		if (stackNo < 0 || stackNo > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+		return stackWeights[stackNo];
+	}
+	
+	/**
+	 * Returns how many more containers of a type there is room for, in the
+	 * stacks of that type and in the empty stacks, regardless of the
+	 * ship's weight limit.
+	 * 
+	 * @param typeName the container type, as returned by <code>getType</code>
+	 * @return the number of containers
+	 */
+	public int getRemainingCapacity(String typeName) {
+		int type = typeNames.indexOf(typeName);
+		return emptyStackCount * maxHeight + (type > 0 ? typeRoom[type] : 0);
+	}
+	
+	/**
+	 * Returns the containers which can be unloaded right now, i.e., the top
+	 * container of every stack which is not empty.
+	 * 
+	 * @return the containers, in stack order
+	 */
+	public List<FreightContainer> getAccessibleContainers() {
+		List<FreightContainer> tops = new ArrayList<FreightContainer>(numStacks - emptyStackCount);
+		for (int i = loadedStacks.first(); i >= 0; i = loadedStacks.next(i + 1)) {
+			pageIn(i);
+			tops.add(slots[i * maxHeight + heights[i] - 1]);
+		}
+		return tops;
+	}
+	
+	/**
+	 * Gives the position of each stack on deck and the limits on the ship's
+	 * moments, after which loads and restows which would take either moment
+	 * beyond its limit are rejected.  Unloads are never rejected, since a
+	 * container due to be discharged has to leave the ship.  The moments
+	 * are kept up to date on every change, so checking a load takes
+	 * constant time.
+	 * <p>
+	 * Coordinates are in centimetres from the point the moments are taken
+	 * about, e.g., forward of midships and starboard of the centre line,
+	 * and moments are in tonne-centimetres.
+	 * 
+	 * @param longitudinal the longitudinal coordinate of each stack
+	 * @param transverse the transverse coordinate of each stack
+	 * @param maxTrimMoment the largest longitudinal moment allowed, either way
+	 * @param maxListMoment the largest transverse moment allowed, either way
+	 * @throws ManifestException if there is not one coordinate of each kind
+	 * per stack, if a limit is negative, or if the cargo already on board is
+	 * out of balance
+	 */
+	public void setStackCoordinates(int[] longitudinal, int[] transverse, long maxTrimMoment, long maxListMoment)
+	throws ManifestException {
+		if (longitudinal.length != numStacks || transverse.length != numStacks) {
+			throw new ManifestException("Invalid Stack Coordinates");
+		}
+		if (maxTrimMoment < 0 || maxListMoment < 0) {
+			throw new ManifestException("Invalid Balance Limits");
+		}
+		ShipBalance newBalance = new ShipBalance(longitudinal.clone(), transverse.clone(), maxTrimMoment,
+				maxListMoment, stackWeights);
+		if (!newBalance.isBalanced()) {
+			throw new ManifestException("The cargo on board is already out of balance");
+		}
+		balance = newBalance;
+	}
+	
+	/**
+	 * Returns the longitudinal moment of the cargo, i.e., the sum of each
+	 * container's weight times its stack's longitudinal coordinate.
+	 * 
+	 * @return the moment (in tonne-centimetres), 0 if no coordinates have
+	 * been given
+	 */
+	public long getTrimMoment() {
+		return balance == null ? 0 : balance.longitudinalMoment;
+	}
+	
+	/**
+	 * Returns the transverse moment of the cargo, i.e., the sum of each
+	 * container's weight times its stack's transverse coordinate.
+	 * 
+	 * @return the moment (in tonne-centimetres), 0 if no coordinates have
+	 * been given
+	 */
+	public long getListMoment() {
+		return balance == null ? 0 : balance.transverseMoment;
+	}
+	
+	/**
+	 * Returns the longitudinal coordinate of the cargo's centre of gravity.
+	 * 
+	 * @return the coordinate (in centimetres), 0 if there is no cargo
+	 */
+	public double getLongitudinalCentre() {
+		return currentWeight == 0 ? 0 : (double) getTrimMoment() / currentWeight;
+	}
+	
+	/**
+	 * Returns the transverse coordinate of the cargo's centre of gravity.
+	 * 
+	 * @return the coordinate (in centimetres), 0 if there is no cargo
+	 */
+	public double getTransverseCentre() {
+		return currentWeight == 0 ? 0 : (double) getListMoment() / currentWeight;
+	}
 
 	
 	/* ***** toString methods added to support the GUI ***** */
 	
 	public String toString(ContainerCode toFind) {
-		String toReturn = "";
-		for (int i = 0; i < containers.size(); ++i) {
-			ArrayList<FreightContainer> currentStack = containers.get(i);
-			toReturn += "|";
-			for (int j = 0; j < currentStack.size(); ++j) {
-				if (toFind != null && currentStack.get(j).getCode().toString().equals(toFind.toString()))
-					toReturn += "|*" + currentStack.get(j).getCode().toString() + "*|";
-				else
-					toReturn += "| " + currentStack.get(j).getCode().toString() + " |";
-			}
-			if (currentStack.size() == 0)
-				toReturn +=  "|  ||\n";
+		StringBuilder toReturn = new StringBuilder(numStacks * 5 + codes.size() * 15);
+		try {
+			render(toReturn, toFind, 0, numStacks);
+		} catch (IOException e) {
+			throw new AssertionError(e); // a StringBuilder does not throw IOException
+		} catch (ManifestException e) {
+			throw new AssertionError(e); // all stacks are in range
+		}
+		return toReturn.toString();
+	}
+	
+	/**
+	 * Writes the same text as <code>toString(ContainerCode)</code> for a
+	 * range of stacks, one line per stack, straight to the given output.
+	 * This takes time in the number of stacks and containers written, and
+	 * does not build the whole text in memory.
+	 * 
+	 * @param out where to write the text, e.g., a <code>Writer</code>
+	 * @param toFind the container to highlight, or <code>null</code>
+	 * @param fromStack the first stack to write
+	 * @param toStack one more than the last stack to write
+	 * @throws IOException if writing to the output fails
+	 * @throws ManifestException if the range of stacks is not on the ship
+	 */
+	public void render(Appendable out, ContainerCode toFind, int fromStack, int toStack)
+	throws IOException, ManifestException {
+		if (fromStack < 0 || toStack > numStacks || fromStack > toStack) {
+			throw new ManifestException("No such stack");
+		}
+		long find = toFind == null ? ContainerCode.INVALID : toFind.toLong();
+		for (int i = fromStack; i < toStack; ++i) {
+			pageIn(i);
+			renderStack(out, slots, i * maxHeight, heights[i], find);
+		}
+	}
+	
+	/**
+	 * Writes the line of <code>toString(ContainerCode)</code> for one stack.
+	 * 
+	 * @param out where to write the line
+	 * @param containers an array holding the stack's containers
+	 * @param bottom the index of the stack's bottom container in the array
+	 * @param height the number of containers in the stack
+	 * @param toFind the packed code of the container to highlight, or
+	 * <code>ContainerCode.INVALID</code>
+	 * @throws IOException if writing to the output fails
+	 */
+	static void renderStack(Appendable out, FreightContainer[] containers, int bottom, int height, long toFind)
+	throws IOException {
+		out.append('|');
+		for (int j = bottom; j < bottom + height; ++j) {
+			ContainerCode code = containers[j].getCode();
+			if (code.toLong() == toFind)
+				out.append("|*").append(code.toString()).append("*|");
 			else
-				toReturn += "|\n";
+				out.append("| ").append(code.toString()).append(" |");
 		}
-		return toReturn;
+		if (height == 0)
+			out.append("|  ||\n");
+		else
+			out.append("|\n");
 	}
 
 	@Override
@@ -271,4 +995,70 @@ public class CargoManifest {
 	public int getStackNumber() {
 		return numStacks;
 	}
+	
+	/**
+	 * Returns the version of the manifest, which increases by one every time
+	 * a container is loaded or unloaded or a setpoint is changed.
+	 * 
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns an immutable view of the manifest as it is now, e.g., for
+	 * drawing the manifest or for reports produced on another thread.  The
+	 * view does not change when the manifest does, so readers never see a
+	 * half-applied change and never hold up the manifest's owner.
+	 * <p>
+	 * Like every method of this class, <code>snapshot</code> itself must be
+	 * called on the thread which changes the manifest (or under the same
+	 * lock), since it reads the live stacks and clears the record of which
+	 * stacks changed.  Only the returned snapshot may be handed to other
+	 * threads.
+	 * <p>
+	 * Stacks which have not changed since the previous snapshot are shared
+	 * with it, so taking a snapshot costs time in the number of stacks
+	 * changed since then (plus a small fraction of the number of stacks),
+	 * not in the number of containers on board.
+	 * 
+	 * @return the snapshot
+	 */
+	public ManifestSnapshot snapshot() {
+		if (changedCount > 0) {
+			lastSnapshot = new ManifestSnapshot(this, lastSnapshot);
+			for (int i = 0; i < changedCount; i++) {
+				stackChanged[changedStacks[i]] = false;
+			}
+			changedCount = 0;
+		}
+		return lastSnapshot;
+	}
+	
+	/**
+	 * Returns what has changed since a given version of the manifest, so a
+	 * copy of the manifest at that version can be brought up to date without
+	 * copying the whole manifest.  The latest changes are remembered in a
+	 * ring of fixed size; if changes since the version have been forgotten,
+	 * or the version is not one this manifest has had, a snapshot of the
+	 * whole manifest is returned instead.
+	 * 
+	 * @param since the version the caller has
+	 * @return the changes made after that version, oldest first, or a snapshot
+	 */
+	public ManifestDelta changesSince(long since) {
+		if (since < Math.max(changesFrom, version - changeKinds.length) || since > version) {
+			return new ManifestDelta(since, snapshot());
+		}
+		ManifestChange.Kind[] kinds = ManifestChange.Kind.values();
+		List<ManifestChange> changes = new ArrayList<ManifestChange>((int) (version - since));
+		for (long v = since + 1; v <= version; v++) {
+			int change = (int) (v % changeKinds.length);
+			int slot = changeSlots[change];
+			changes.add(new ManifestChange(v, kinds[changeKinds[change]], changeContainers[change],
+					new ContainerPosition(slot / maxHeight, slot % maxHeight)));
+		}
+		return new ManifestDelta(since, version, changes);
+	}
 }
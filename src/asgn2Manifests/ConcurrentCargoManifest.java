@@ -0,0 +1,329 @@
+package asgn2Manifests;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.jcip.annotations.GuardedBy;
+import net.jcip.annotations.ThreadSafe;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * A cargo manifest which may be loaded and unloaded by several threads at
+ * once, e.g., one per crane or gate.  It follows the same five rules as
+ * <code>CargoManifest</code> and offers the same operations.
+ * <p>
+ * Each stack is guarded by one of a fixed number of locks (lock striping),
+ * so operations on different stacks seldom wait for each other.  The
+ * ship's weight is reserved atomically before a stack is chosen, and each
+ * code is claimed in a concurrent map, so neither the weight limit nor the
+ * uniqueness of codes needs a global lock.  <code>whichStack</code> and
+ * <code>howHigh</code> only read that map and never lock.
+ * <p>
+ * A new container still goes to the stack closest to the bridge that can
+ * take it at the moment it is placed.  When several threads load at once
+ * the order in which they are placed is not defined.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+@ThreadSafe
+public class ConcurrentCargoManifest {
+	
+	// the most locks used, so large ships do not need one lock per stack
+	private static final int MAX_STRIPES = 4096;
+	// value in codes while a container is being placed
+	private static final Integer RESERVED = -1;
+	
+	private final int numStacks;
+	private final int maxHeight;
+	private final int maxWeight;
+	// the lock guarding stack s is locks[s & stripeMask]
+	private final Object[] locks;
+	private final int stripeMask;
+	// the container at height h of stack s is in slot s * maxHeight + h
+	@GuardedBy("locks")
+	private final FreightContainer[] slots;
+	@GuardedBy("locks")
+	private final int[] heights;
+	// the type of each stack, null when it has no container
+	@GuardedBy("locks")
+	private final String[] stackTypes;
+	// the slot of each container on board, keyed by packed code, or RESERVED while it is being placed
+	private final ConcurrentHashMap<Long, Integer> codes;
+	// the stacks of each type which still have room; only changed while holding the stack's lock
+	private final ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>> openStacks;
+	// the stacks which have no container; only changed while holding the stack's lock
+	private final ConcurrentSkipListSet<Integer> emptyStacks;
+	// counts changes to openStacks and emptyStacks, so a load can tell whether "no space" was read consistently
+	private final AtomicLong indexChanges;
+	private final AtomicInteger currentWeight;
+	
+	/**
+	 * Constructs a new cargo manifest which may be shared between threads.
+	 * See the <code>CargoManifest</code> constructor for the parameters.
+	 * 
+	 * @param numStacks the number of stacks that can be accommodated on deck
+	 * @param maxHeight the maximum allowable height of any stack
+	 * @param maxWeight the maximum weight of containers allowed on board 
+	 * (in tonnes)
+	 * @throws ManifestException if negative numbers are given for any of the
+	 * parameters, or if the deck is too large to be held in memory
+	 */
+	public ConcurrentCargoManifest(Integer numStacks, Integer maxHeight, Integer maxWeight)
+	throws ManifestException {
+		if (numStacks < 0) {
+			throw new ManifestException("Invalid Stacks Number");
+		}
+		if (maxHeight < 0) {
+			throw new ManifestException("Invalid Max Height");
+		}
+		if (maxWeight < 0) {
+			throw new ManifestException("Invalid Max Weight");
+		}
+		if ((long) numStacks * maxHeight > Integer.MAX_VALUE - 8) {
+			throw new ManifestException("The deck is too large");
+		}
+		
+		this.numStacks = numStacks;
+		this.maxHeight = maxHeight;
+		this.maxWeight = maxWeight;
+		
+		int stripes = 1;
+		while (stripes < numStacks && stripes < MAX_STRIPES) {
+			stripes <<= 1;
+		}
+		locks = new Object[stripes];
+		for (int i = 0; i < stripes; i++) {
+			locks[i] = new Object();
+		}
+		stripeMask = stripes - 1;
+		
+		slots = new FreightContainer[numStacks * maxHeight];
+		heights = new int[numStacks];
+		stackTypes = new String[numStacks];
+		codes = new ConcurrentHashMap<Long, Integer>();
+		openStacks = new ConcurrentHashMap<String, ConcurrentSkipListSet<Integer>>();
+		emptyStacks = new ConcurrentSkipListSet<Integer>();
+		indexChanges = new AtomicLong();
+		currentWeight = new AtomicInteger();
+		for (int i = 0; i < numStacks; i++) {
+			emptyStacks.add(i);
+		}
+	}
+	
+	/**
+	 * Loads a freight container onto the ship, provided that it can be
+	 * accommodated within the five rules set by the captain.
+	 * 
+	 * @param newContainer the new freight container to be loaded
+	 * @throws ManifestException if adding this container would exceed
+	 * the ship's weight limit; if a container with the same code is
+	 * already on board; or if no suitable space can be found for this
+	 * container
+	 */
+	public void loadContainer(FreightContainer newContainer) throws ManifestException {
+		int weight = newContainer.getGrossWeight();
+		while (true) {
+			int current = currentWeight.get();
+			if (current + weight > maxWeight) {
+				throw new ManifestException("Exceed the ship's weight limit");
+			}
+			if (currentWeight.compareAndSet(current, current + weight)) {
+				break;
+			}
+		}
+		
+		Long code = newContainer.getCode().toLong();
+		if (codes.putIfAbsent(code, RESERVED) != null) {
+			currentWeight.addAndGet(-weight);
+			throw new ManifestException("A duplicate code has been found");
+		}
+		
+		String type = newContainer.getType();
+		ConcurrentSkipListSet<Integer> open = openStacksOf(type);
+		while (true) {
+			long changes = indexChanges.get();
+			int stackNumber = nearestStack(open);
+			if (stackNumber < 0) {
+				if (indexChanges.get() != changes) {
+					continue; // a stack was emptied or freed while looking
+				}
+				codes.remove(code);
+				currentWeight.addAndGet(-weight);
+				throw new ManifestException("No suitable space can be found for this container");
+			}
+			synchronized (lockFor(stackNumber)) {
+				// the stack may have changed since it was chosen, in which case choose again
+				int height = heights[stackNumber];
+				if (height < maxHeight && (height == 0 || stackTypes[stackNumber].equals(type))) {
+					if (height == 0) {
+						stackTypes[stackNumber] = type;
+						open.add(stackNumber);
+						emptyStacks.remove(stackNumber);
+						indexChanges.incrementAndGet();
+					}
+					int slot = stackNumber * maxHeight + height;
+					slots[slot] = newContainer;
+					heights[stackNumber] = height + 1;
+					if (height + 1 >= maxHeight) {
+						open.remove(stackNumber);
+						indexChanges.incrementAndGet();
+					}
+					codes.put(code, slot);
+					return;
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the stack closest to the bridge which currently appears to be
+	 * able to take a container with the given open stacks.  The caller must
+	 * check the stack again once it holds the stack's lock.
+	 * 
+	 * @return the stack number, or -1 if there is no suitable stack
+	 */
+	private int nearestStack(ConcurrentSkipListSet<Integer> open) {
+		if (maxHeight < 1) {
+			return -1;
+		}
+		Integer openStack = open.ceiling(0);
+		Integer emptyStack = emptyStacks.ceiling(0);
+		if (openStack == null) {
+			return emptyStack == null ? -1 : emptyStack;
+		}
+		if (emptyStack == null) {
+			return openStack;
+		}
+		return Math.min(openStack, emptyStack);
+	}
+	
+	private ConcurrentSkipListSet<Integer> openStacksOf(String type) {
+		ConcurrentSkipListSet<Integer> open = openStacks.get(type);
+		if (open == null) {
+			ConcurrentSkipListSet<Integer> created = new ConcurrentSkipListSet<Integer>();
+			open = openStacks.putIfAbsent(type, created);
+			if (open == null) {
+				open = created;
+			}
+		}
+		return open;
+	}
+	
+	private Object lockFor(int stackNumber) {
+		return locks[stackNumber & stripeMask];
+	}
+	
+	/**
+	 * Unloads a particular container from the ship, provided that
+	 * it is accessible (i.e., on top of a stack).
+	 * 
+	 * @param containerId the code of the container to be unloaded
+	 * @throws ManifestException if the container is not accessible because
+	 * it's not on the top of a stack (including the case where it's not on board
+	 * the ship at all)
+	 */
+	public void unloadContainer(ContainerCode containerId) throws ManifestException {
+		Long code = containerId.toLong();
+		Integer slot = codes.get(code);
+		if (slot == null || slot.equals(RESERVED)) {
+			throw new ManifestException("No such container");
+		}
+		int stackNumber = slot / maxHeight;
+		synchronized (lockFor(stackNumber)) {
+			if (!slot.equals(codes.get(code))) {
+				throw new ManifestException("No such container"); // unloaded by another thread meanwhile
+			}
+			int top = stackNumber * maxHeight + heights[stackNumber] - 1;
+			if (slot != top) {
+				throw new ManifestException("The container is not on the top of that stack");
+			}
+			FreightContainer topContainer = slots[top];
+			slots[top] = null;
+			heights[stackNumber]--;
+			ConcurrentSkipListSet<Integer> open = openStacks.get(stackTypes[stackNumber]);
+			if (heights[stackNumber] == 0) {
+				stackTypes[stackNumber] = null;
+				emptyStacks.add(stackNumber);
+				open.remove(stackNumber);
+			} else {
+				open.add(stackNumber);
+			}
+			indexChanges.incrementAndGet();
+			codes.remove(code);
+			currentWeight.addAndGet(-topContainer.getGrossWeight());
+		}
+	}
+	
+	/**
+	 * Returns which stack holds a particular container, if any, without
+	 * locking.  See <code>CargoManifest.whichStack</code>.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the number of the stack with the container in it, or <code>null</code>
+	 * if the container is not on board
+	 */
+	public Integer whichStack(ContainerCode queryContainer) {
+		Integer slot = codes.get(queryContainer.toLong());
+		if (slot == null || slot.equals(RESERVED)) {
+			return null;
+		} else {
+			return slot / maxHeight;
+		}
+	}
+	
+	/**
+	 * Returns how high in its stack a particular container is, without
+	 * locking.  See <code>CargoManifest.howHigh</code>.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's height in the stack, or <code>null</code>
+	 * if the container is not on board
+	 */
+	public Integer howHigh(ContainerCode queryContainer) {
+		Integer slot = codes.get(queryContainer.toLong());
+		if (slot == null || slot.equals(RESERVED)) {
+			return null;
+		} else {
+			return slot % maxHeight;
+		}
+	}
+	
+	/**
+	 * Returns the contents of a particular stack as an array,
+	 * starting with the bottommost container at position zero in the array.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @return the stack's freight containers as an array
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public FreightContainer[] toArray(Integer stackNo) throws ManifestException {
+		if (stackNo < 0 || stackNo > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+		synchronized (lockFor(stackNo)) {
+			FreightContainer[] array = new FreightContainer[heights[stackNo]];
+			System.arraycopy(slots, stackNo * maxHeight, array, 0, array.length);
+			return array;
+		}
+	}
+	
+	/**
+	 * Returns the total weight of the containers on board, including any
+	 * being loaded at the moment.
+	 * 
+	 * @return the weight (in tonnes)
+	 */
+	public int getCurrentWeight() {
+		return currentWeight.get();
+	}
+	
+	public int getStackNumber() {
+		return numStacks;
+	}
+}
@@ -0,0 +1,74 @@
+package asgn2Manifests;
+
+import asgn2Containers.FreightContainer;
+
+/**
+ * One move of a plan made by <code>DigOutPlanner</code>: a container taken
+ * off the top of a stack and either put on top of another stack (a restow)
+ * or unloaded to the quay, to be loaded again later.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class ContainerMove {
+
+	private final FreightContainer container;
+	private final ContainerPosition from;
+	private final ContainerPosition to;
+
+	/**
+	 * Constructs a move.
+	 *
+	 * @param container the container moved
+	 * @param from the container's position before the move
+	 * @param to the container's position after the move, or <code>null</code>
+	 * if it is unloaded to the quay
+	 */
+	public ContainerMove(FreightContainer container, ContainerPosition from, ContainerPosition to) {
+		this.container = container;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Returns the container moved.
+	 *
+	 * @return the container
+	 */
+	public FreightContainer getContainer() {
+		return container;
+	}
+
+	/**
+	 * Returns where the container is before the move.
+	 *
+	 * @return the position, always on the top of its stack
+	 */
+	public ContainerPosition getFrom() {
+		return from;
+	}
+
+	/**
+	 * Returns where the container is after the move.
+	 *
+	 * @return the position, or <code>null</code> if the container is
+	 * unloaded to the quay
+	 */
+	public ContainerPosition getTo() {
+		return to;
+	}
+
+	/**
+	 * Returns whether the container stays on board.
+	 *
+	 * @return true for a restow, false for an unload to the quay
+	 */
+	public boolean isRestow() {
+		return to != null;
+	}
+
+	@Override
+	public String toString() {
+		return container.getCode() + ": " + from + " -> " + (to == null ? "quay" : to.toString());
+	}
+}
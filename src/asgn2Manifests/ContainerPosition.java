@@ -0,0 +1,64 @@
+package asgn2Manifests;
+
+/**
+ * The position of a container on board: the number of the stack it is in
+ * and its height in that stack, counting from zero at the bottom of the
+ * stack as for <code>CargoManifest.howHigh</code>.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ContainerPosition {
+	
+	private final int stack;
+	private final int height;
+	
+	/**
+	 * Constructs a container position.
+	 * 
+	 * @param stack the stack number
+	 * @param height the height in the stack, zero for the bottom container
+	 */
+	public ContainerPosition(int stack, int height) {
+		this.stack = stack;
+		this.height = height;
+	}
+	
+	/**
+	 * Returns the number of the stack.
+	 * 
+	 * @return the stack number
+	 */
+	public int getStack() {
+		return stack;
+	}
+	
+	/**
+	 * Returns the height in the stack.
+	 * 
+	 * @return the height, zero for the bottom container
+	 */
+	public int getHeight() {
+		return height;
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if (obj instanceof ContainerPosition) {
+			ContainerPosition other = (ContainerPosition) obj;
+			return other.stack == stack && other.height == height;
+		} else {
+			return false;
+		}
+	}
+	
+	@Override
+	public int hashCode() {
+		return stack * 31 + height;
+	}
+	
+	@Override
+	public String toString() {
+		return "stack " + stack + ", height " + height;
+	}
+}
@@ -0,0 +1,132 @@
+package asgn2Manifests;
+
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.FreightContainer;
+
+/**
+ * The conditions of a search by <code>CargoManifest.find</code>: the
+ * containers of an owner, of a type, within a range of gross weights
+ * and/or of a dangerous goods category.  A new query matches every
+ * container; each condition set narrows it down, and all of them must
+ * hold.  The conditions are set in a chain, e.g.,
+ * <pre>
+ * manifest.find(new ContainerQuery().owner("MSC").minWeight(26));
+ * </pre>
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class ContainerQuery {
+
+	/** The number of owner codes, AAA to ZZZ. */
+	static final int OWNERS = 26 * 26 * 26;
+
+	// -1 when not a condition
+	int owner = -1;
+	// null when not a condition
+	String type;
+	int minWeight = Integer.MIN_VALUE;
+	int maxWeight = Integer.MAX_VALUE;
+	// -1 when not a condition
+	int category = -1;
+
+	/**
+	 * Only matches containers of an owner.
+	 *
+	 * @param ownerCode the three letter owner code, e.g., "MSC"
+	 * @return this query
+	 * @throws IllegalArgumentException if the owner code is not three upper
+	 * case letters
+	 */
+	public ContainerQuery owner(String ownerCode) {
+		if (ownerCode == null || ownerCode.length() != 3) {
+			throw new IllegalArgumentException("The owner code must be three upper case letters");
+		}
+		int number = 0;
+		for (int i = 0; i < 3; i++) {
+			char c = ownerCode.charAt(i);
+			if (c < 'A' || c > 'Z') {
+				throw new IllegalArgumentException("The owner code must be three upper case letters");
+			}
+			number = number * 26 + (c - 'A');
+		}
+		owner = number;
+		return this;
+	}
+
+	/**
+	 * Only matches containers of a type.
+	 *
+	 * @param typeName the type, as returned by <code>FreightContainer.getType</code>,
+	 * e.g., "RefrigeratedContainer"
+	 * @return this query
+	 */
+	public ContainerQuery type(String typeName) {
+		type = typeName;
+		return this;
+	}
+
+	/**
+	 * Only matches containers at least as heavy as a weight.
+	 *
+	 * @param weight the lightest gross weight matched (in tonnes)
+	 * @return this query
+	 */
+	public ContainerQuery minWeight(int weight) {
+		minWeight = weight;
+		return this;
+	}
+
+	/**
+	 * Only matches containers no heavier than a weight.
+	 *
+	 * @param weight the heaviest gross weight matched (in tonnes)
+	 * @return this query
+	 */
+	public ContainerQuery maxWeight(int weight) {
+		maxWeight = weight;
+		return this;
+	}
+
+	/**
+	 * Only matches dangerous goods containers of a category.
+	 *
+	 * @param dangerousGoodsCategory the category, from 1 to 9
+	 * @return this query
+	 * @throws IllegalArgumentException if there is no such category
+	 */
+	public ContainerQuery category(int dangerousGoodsCategory) {
+		if (dangerousGoodsCategory < 1 || dangerousGoodsCategory > 9) {
+			throw new IllegalArgumentException("The category must be from 1 to 9");
+		}
+		category = dangerousGoodsCategory;
+		return this;
+	}
+
+	/**
+	 * Returns the owner number of a packed container code, as used by
+	 * <code>owner</code>.
+	 */
+	static int ownerOf(long packedCode) {
+		return (int) (packedCode / 10000000L);
+	}
+
+	/**
+	 * Returns the dangerous goods category of a container, or 0 if it is not
+	 * a dangerous goods container.
+	 */
+	static int categoryOf(FreightContainer container) {
+		return container instanceof DangerousGoodsContainer
+				? ((DangerousGoodsContainer) container).getCategory() : 0;
+	}
+
+	/**
+	 * Returns whether a container meets the conditions other than its type.
+	 */
+	boolean matches(FreightContainer container) {
+		int weight = container.getGrossWeight();
+		return (owner < 0 || ownerOf(container.getCode().toLong()) == owner)
+				&& weight >= minWeight && weight <= maxWeight
+				&& (category < 0 || categoryOf(container) == category);
+	}
+}
@@ -0,0 +1,112 @@
+package asgn2Manifests;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.FreightContainer;
+import asgn2Containers.GeneralGoodsContainer;
+import asgn2Containers.RefrigeratedContainer;
+import asgn2Exceptions.CargoException;
+import asgn2Exceptions.InvalidContainerException;
+
+/**
+ * Conversions between freight containers and the fixed-size records the
+ * manifest's binary formats store them as: a packed code, a kind, the
+ * gross weight and one extra value, which is the dangerous goods category
+ * or the thermostat temperature.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+final class ContainerRecords {
+	
+	/** Record kind of a <code>GeneralGoodsContainer</code>. */
+	static final byte GENERAL = 1;
+	/** Record kind of a <code>RefrigeratedContainer</code>. */
+	static final byte REFRIGERATED = 2;
+	/** Record kind of a <code>DangerousGoodsContainer</code>. */
+	static final byte DANGEROUS = 3;
+	
+	private ContainerRecords() {
+	}
+	
+	/**
+	 * Returns the record kind of a container.
+	 * 
+	 * @param container the container
+	 * @return the kind, or 0 if the container is of a kind which cannot be stored
+	 */
+	static byte kindOf(FreightContainer container) {
+		if (container instanceof DangerousGoodsContainer) {
+			return DANGEROUS;
+		} else if (container instanceof RefrigeratedContainer) {
+			return REFRIGERATED;
+		} else if (container instanceof GeneralGoodsContainer) {
+			return GENERAL;
+		} else {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Returns the type name, as returned by <code>FreightContainer.getType</code>,
+	 * of the containers of a record kind.
+	 * 
+	 * @param kind the record kind
+	 * @return the type name, or <code>null</code> if the kind is unknown
+	 */
+	static String typeName(int kind) {
+		switch (kind) {
+		case GENERAL:
+			return "GeneralGoodsContainer";
+		case REFRIGERATED:
+			return "RefrigeratedContainer";
+		case DANGEROUS:
+			return "DangerousGoodsContainer";
+		default:
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns the extra value stored with a container: its category for a
+	 * dangerous goods container, its temperature for a refrigerated one and
+	 * zero otherwise.
+	 * 
+	 * @param container the container
+	 * @return the extra value
+	 */
+	static int extraOf(FreightContainer container) {
+		if (container instanceof DangerousGoodsContainer) {
+			return ((DangerousGoodsContainer) container).getCategory();
+		} else if (container instanceof RefrigeratedContainer) {
+			return ((RefrigeratedContainer) container).getTemperature();
+		} else {
+			return 0;
+		}
+	}
+	
+	/**
+	 * Creates a container from the fields of a record.  The code is not
+	 * parsed again, only unpacked.
+	 * 
+	 * @param code the packed container code
+	 * @param kind the record kind
+	 * @param grossWeight the gross weight (in tonnes)
+	 * @param extra the category or temperature
+	 * @return the container
+	 * @throws CargoException if the fields do not describe a valid container
+	 */
+	static FreightContainer create(long code, byte kind, int grossWeight, int extra) throws CargoException {
+		ContainerCode containerCode = ContainerCode.fromLong(code);
+		switch (kind) {
+		case GENERAL:
+			return new GeneralGoodsContainer(containerCode, grossWeight);
+		case REFRIGERATED:
+			return new RefrigeratedContainer(containerCode, grossWeight, extra);
+		case DANGEROUS:
+			return new DangerousGoodsContainer(containerCode, grossWeight, extra);
+		default:
+			throw new InvalidContainerException("Unknown container kind " + kind);
+		}
+	}
+}
@@ -0,0 +1,120 @@
+package asgn2Manifests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * Plans how to dig out a container buried in its stack, so that it can be
+ * unloaded.  Every container above it has to be moved, top first, and
+ * moving each of them once is enough, so the shortest plan has exactly one
+ * move per container above the target.  Each is restowed on board where
+ * the captain's rules allow, i.e., on another stack of the same type with
+ * room left or on an empty stack, choosing stacks closest to the bridge
+ * first as <code>loadContainer</code> does; once there is no such room,
+ * the rest are unloaded to the quay.  Restows do not change the ship's
+ * weight and unloads only reduce it, so the weight limit always holds.
+ * <p>
+ * Once the ship's stack coordinates have been given with
+ * <code>CargoManifest.setStackCoordinates</code>, a stack is only chosen if
+ * restowing the container there, after the moves planned before it, keeps
+ * the trim and list within their limits, as
+ * <code>restowContainer</code> requires; a container no stack can take
+ * that way is unloaded to the quay instead, since unloads are never
+ * rejected.
+ * <p>
+ * A plan is carried out with <code>CargoManifest.restowContainer</code>
+ * and <code>unloadContainer</code>, in order.  Planning takes time in the
+ * number of moves, plus a few lookups in the manifest's stack sets, so it
+ * does not depend on the size of the ship, unless the balance limits rule
+ * out stacks, which are then skipped one by one.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class DigOutPlanner {
+
+	private DigOutPlanner() {
+	}
+
+	/**
+	 * Plans the moves which leave a container on the top of its stack.
+	 *
+	 * @param manifest the manifest of the ship
+	 * @param target the code of the container to dig out
+	 * @return the moves, in the order they are to be made, or an empty list
+	 * if the container is already on the top of its stack
+	 * @throws ManifestException if the container is not on board
+	 */
+	public static List<ContainerMove> plan(CargoManifest manifest, ContainerCode target) throws ManifestException {
+		int slot = manifest.codes.get(target.toLong());
+		if (slot == LongIntHashMap.MISSING) {
+			throw new ManifestException("No such container");
+		}
+		int maxHeight = manifest.maxHeight;
+		int stack = slot / maxHeight;
+		int top = manifest.heights[stack] - 1;
+		manifest.pageIn(stack);
+		StackSet open = manifest.openStacks.get(manifest.stackTypes[stack]);
+
+		List<ContainerMove> moves = new ArrayList<ContainerMove>(top - slot % maxHeight);
+		// the moments after the moves planned so far, null if the ship's balance is not checked
+		ShipBalance balance = manifest.balance == null ? null : new ShipBalance(manifest.balance);
+		// the number of containers the plan puts on each destination so far
+		Map<Integer, Integer> added = new HashMap<Integer, Integer>();
+		int cursor = 0;		// without balance limits, no stack below this one has room left
+		for (int height = top; height > slot % maxHeight; height--) {
+			FreightContainer container = manifest.slots[stack * maxHeight + height];
+			int weight = container.getGrossWeight();
+			int destination = -1;
+			int destinationHeight = 0;
+			for (int candidate = nextDestination(manifest, open, stack, balance == null ? cursor : 0);
+					candidate >= 0; candidate = nextDestination(manifest, open, stack, candidate + 1)) {
+				Integer count = added.get(candidate);
+				destinationHeight = manifest.heights[candidate] + (count == null ? 0 : count);
+				if (destinationHeight < maxHeight && (balance == null || balance.allowsMove(stack, candidate, weight))) {
+					destination = candidate;
+					break;
+				}
+			}
+			ContainerPosition to = null;		// no stack on board can take it
+			if (destination >= 0) {
+				to = new ContainerPosition(destination, destinationHeight);
+				added.put(destination, destinationHeight - manifest.heights[destination] + 1);
+				cursor = destination;
+				if (balance != null) {
+					balance.add(destination, weight);
+				}
+			}
+			if (balance != null) {
+				balance.add(stack, -weight);
+			}
+			moves.add(new ContainerMove(container, new ContainerPosition(stack, height), to));
+		}
+		return moves;
+	}
+
+	/**
+	 * Returns the lowest numbered stack, from a given one on, which can take
+	 * containers from a stack: one of the same type with room left, or an
+	 * empty one.
+	 *
+	 * @return the stack, or -1 if there is none
+	 */
+	private static int nextDestination(CargoManifest manifest, StackSet open, int stack, int from) {
+		int openStack = open.next(from);
+		if (openStack == stack) {
+			openStack = open.next(stack + 1);
+		}
+		int emptyStack = manifest.emptyStacks.next(from);
+		if (openStack < 0 || emptyStack < 0) {
+			return Math.max(openStack, emptyStack);
+		}
+		return Math.min(openStack, emptyStack);
+	}
+}
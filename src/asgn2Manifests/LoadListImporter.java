@@ -0,0 +1,437 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.FreightContainer;
+import asgn2Containers.GeneralGoodsContainer;
+import asgn2Containers.RefrigeratedContainer;
+import asgn2Exceptions.CargoException;
+
+/**
+ * Imports a load list file into a cargo manifest.  Each line of the file
+ * describes one container by four fields: its code, its type, its gross
+ * weight and, for a refrigerated or dangerous goods container, its
+ * temperature or goods category.  The type is <code>G</code>,
+ * <code>R</code> or <code>D</code>, or the name used by the load container
+ * dialog ("General Goods", "Refrigerated Goods", "Dangerous Goods"),
+ * ignoring case.  Fields are either separated by a delimiter or have fixed
+ * widths, and spaces around them are ignored.  Blank lines and lines
+ * starting with <code>#</code> are skipped.
+ * <p>
+ * The file is read in chunks of whole lines through a
+ * <code>FileChannel</code>.  The chunks are parsed on worker threads while
+ * the calling thread loads the parsed containers into the manifest, in the
+ * order of the file, so the result is the same as loading the lines one
+ * after the other.  Only a few chunks are held at a time, so memory use
+ * does not depend on the size of the file.  Lines which cannot be parsed
+ * or loaded are reported and skipped, one report line each.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class LoadListImporter {
+
+	static final int CHUNK_SIZE = 1 << 20;
+	private static final String[] TYPE_NAMES = { "General Goods", "Refrigerated Goods", "Dangerous Goods" };
+
+	private final byte delimiter;
+	private final int[] widths;
+	private final int threads;
+	private final int chunkSize;
+
+	/**
+	 * Constructs an importer for files with delimited fields, such as CSV
+	 * files.  Fields may not be quoted.
+	 *
+	 * @param delimiter the character between fields, which must be ASCII
+	 * @param threads the number of threads parsing the file
+	 * @throws IllegalArgumentException if the delimiter is not ASCII or
+	 * there is not at least one thread
+	 */
+	public LoadListImporter(char delimiter, int threads) {
+		this(delimiter, null, threads, CHUNK_SIZE);
+	}
+
+	/**
+	 * Constructs an importer for files with fixed-width fields.
+	 *
+	 * @param widths the widths of the code, type, weight and extra fields, in
+	 * bytes
+	 * @param threads the number of threads parsing the file
+	 * @throws IllegalArgumentException if there are not four positive widths
+	 * or not at least one thread
+	 */
+	public LoadListImporter(int[] widths, int threads) {
+		this((char) 0, widths.clone(), threads, CHUNK_SIZE);
+	}
+
+	LoadListImporter(char delimiter, int[] widths, int threads, int chunkSize) {
+		if (threads < 1 || delimiter > 127) {
+			throw new IllegalArgumentException("Invalid importer settings");
+		}
+		if (widths != null && (widths.length != 4 || widths[0] < 1 || widths[1] < 1 || widths[2] < 1
+				|| widths[3] < 1)) {
+			throw new IllegalArgumentException("Invalid field widths");
+		}
+		this.delimiter = (byte) delimiter;
+		this.widths = widths;
+		this.threads = threads;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Counts of the lines of an import.
+	 */
+	public static class Summary {
+
+		private final long lines;
+		private final long loaded;
+		private final long rejected;
+
+		Summary(long lines, long loaded, long rejected) {
+			this.lines = lines;
+			this.loaded = loaded;
+			this.rejected = rejected;
+		}
+
+		/**
+		 * Returns the number of lines in the file, including skipped ones.
+		 *
+		 * @return the number of lines
+		 */
+		public long getLines() {
+			return lines;
+		}
+
+		/**
+		 * Returns the number of containers loaded onto the ship.
+		 *
+		 * @return the number of containers loaded
+		 */
+		public long getLoaded() {
+			return loaded;
+		}
+
+		/**
+		 * Returns the number of lines which were reported and not loaded.
+		 *
+		 * @return the number of rejected lines
+		 */
+		public long getRejected() {
+			return rejected;
+		}
+
+		public String toString() {
+			return lines + " lines, " + loaded + " loaded, " + rejected + " rejected";
+		}
+	}
+
+	/**
+	 * The parsed lines of one chunk of the file, in order.  For each line
+	 * with a container either the container or the reason it is invalid
+	 * is given.
+	 */
+	private static class Chunk {
+		int lineCount;
+		int count;
+		int[] lines;
+		FreightContainer[] containers;
+		String[] errors;
+	}
+
+	/**
+	 * Loads the containers listed in a file onto a ship.
+	 *
+	 * @param file the load list
+	 * @param manifest the manifest to load the containers into
+	 * @param errors where to report the lines which are not loaded, as
+	 * "line <i>n</i>: <i>reason</i>", one per line
+	 * @return the numbers of lines read, loaded and rejected
+	 * @throws IOException if the file cannot be read, a line is longer than
+	 * the chunk size, or the report cannot be written
+	 */
+	public Summary importFile(Path file, CargoManifest manifest, Appendable errors) throws IOException {
+		ExecutorService workers = Executors.newFixedThreadPool(threads);
+		ArrayDeque<Future<Chunk>> pending = new ArrayDeque<Future<Chunk>>();
+		long[] counts = new long[3];	// lines, loaded, rejected
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			byte[] buffer = new byte[chunkSize];
+			int filled = 0;
+			boolean end = false;
+			while (!end) {
+				ByteBuffer target = ByteBuffer.wrap(buffer, filled, buffer.length - filled);
+				while (target.hasRemaining()) {
+					if (channel.read(target) < 0) {
+						end = true;
+						break;
+					}
+				}
+				filled = target.position();
+				int split = end ? filled : lastLineEnd(buffer, filled);
+				if (split < 0) {
+					throw new IOException("A line is longer than " + chunkSize + " bytes");
+				}
+				if (pending.size() >= threads * 2) {
+					feed(pending.removeFirst(), manifest, errors, counts);
+				}
+				final byte[] bytes = buffer;
+				final int length = split;
+				pending.addLast(workers.submit(new Callable<Chunk>() {
+					public Chunk call() {
+						return parse(bytes, length);
+					}
+				}));
+				buffer = new byte[chunkSize];
+				filled -= split;
+				System.arraycopy(bytes, split, buffer, 0, filled);
+			}
+			while (!pending.isEmpty()) {
+				feed(pending.removeFirst(), manifest, errors, counts);
+			}
+		} finally {
+			workers.shutdownNow();
+		}
+		return new Summary(counts[0], counts[1], counts[2]);
+	}
+
+	/**
+	 * Loads the containers of a parsed chunk into the manifest and reports
+	 * the lines which are not loaded.
+	 */
+	private static void feed(Future<Chunk> future, CargoManifest manifest, Appendable errors, long[] counts)
+	throws IOException {
+		Chunk chunk;
+		try {
+			chunk = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while importing", e);
+		} catch (ExecutionException e) {
+			throw new IOException("Cannot parse the load list", e.getCause());
+		}
+		long firstLine = counts[0] + 1;
+		counts[0] += chunk.lineCount;
+		for (int i = 0; i < chunk.count; i++) {
+			String error = chunk.errors[i];
+			if (error == null) {
+				ManifestResult result = manifest.tryLoad(chunk.containers[i]);
+				if (result == ManifestResult.DONE) {
+					counts[1]++;
+					continue;
+				}
+				error = result.getMessage();
+			}
+			counts[2]++;
+			errors.append("line ").append(Long.toString(firstLine + chunk.lines[i])).append(": ")
+					.append(error).append('\n');
+		}
+	}
+
+	private static int lastLineEnd(byte[] buffer, int length) {
+		for (int i = length - 1; i >= 0; i--) {
+			if (buffer[i] == '\n') {
+				return i + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Parses the lines held in the first bytes of a buffer.
+	 *
+	 * @param buffer the buffer
+	 * @param length the number of bytes of whole lines in the buffer
+	 * @return the parsed lines, numbered from 0 within the chunk
+	 */
+	private Chunk parse(byte[] buffer, int length) {
+		int capacity = length / 16 + 1;
+		Chunk chunk = new Chunk();
+		chunk.lines = new int[capacity];
+		chunk.containers = new FreightContainer[capacity];
+		chunk.errors = new String[capacity];
+		int[] fields = new int[8];
+		int line = 0;
+		int start = 0;
+		while (start < length) {
+			int end = start;
+			while (end < length && buffer[end] != '\n') {
+				end++;
+			}
+			int next = end + 1;
+			if (end > start && buffer[end - 1] == '\r') {
+				end--;
+			}
+			if (end > start && buffer[start] != '#' && !isBlank(buffer, start, end)) {
+				if (chunk.count == chunk.lines.length) {
+					grow(chunk);
+				}
+				try {
+					chunk.containers[chunk.count] = parseLine(buffer, start, end, fields);
+				} catch (CargoException e) {
+					chunk.errors[chunk.count] = e.getMessage();
+				} catch (IllegalArgumentException e) {
+					chunk.errors[chunk.count] = e.getMessage();
+				}
+				chunk.lines[chunk.count++] = line;
+			}
+			line++;
+			start = next;
+		}
+		chunk.lineCount = line;
+		return chunk;
+	}
+
+	private static void grow(Chunk chunk) {
+		int capacity = chunk.lines.length * 2;
+		chunk.lines = Arrays.copyOf(chunk.lines, capacity);
+		chunk.containers = Arrays.copyOf(chunk.containers, capacity);
+		chunk.errors = Arrays.copyOf(chunk.errors, capacity);
+	}
+
+	/**
+	 * Parses one line into a container.
+	 *
+	 * @param buffer the bytes holding the line
+	 * @param start the index of the line's first byte
+	 * @param end the index after the line's last byte, excluding the line break
+	 * @param fields space for the start and end of each field
+	 * @return the container
+	 * @throws CargoException if the code or container is invalid
+	 * @throws IllegalArgumentException if the fields are malformed
+	 */
+	private FreightContainer parseLine(byte[] buffer, int start, int end, int[] fields) throws CargoException {
+		int count = widths == null ? splitDelimited(buffer, start, end, fields) : splitFixed(buffer, start, end, fields);
+		if (count < 3 || count > 4) {
+			throw new IllegalArgumentException("Expected 3 or 4 fields but found " + count);
+		}
+		for (int i = 0; i < count; i++) {
+			while (fields[2 * i] < fields[2 * i + 1] && buffer[fields[2 * i]] == ' ') {
+				fields[2 * i]++;
+			}
+			while (fields[2 * i + 1] > fields[2 * i] && buffer[fields[2 * i + 1] - 1] == ' ') {
+				fields[2 * i + 1]--;
+			}
+		}
+
+		int codeStart = fields[0];
+		long code = fields[1] - codeStart == 11 ? ContainerCode.pack(buffer, codeStart) : ContainerCode.INVALID;
+		if (code == ContainerCode.INVALID) {
+			String text = new String(buffer, codeStart, fields[1] - codeStart, StandardCharsets.ISO_8859_1);
+			throw new IllegalArgumentException(text + ": " + ContainerCode.message(ContainerCode.validate(text)));
+		}
+		ContainerCode containerCode = ContainerCode.fromLong(code);
+		int type = parseType(buffer, fields[2], fields[3]);
+		int grossWeight = parseInt(buffer, fields[4], fields[5], "weight");
+		if (type == 0) {
+			return new GeneralGoodsContainer(containerCode, grossWeight);
+		}
+		if (count < 4) {
+			throw new IllegalArgumentException("Missing " + (type == 1 ? "temperature" : "category"));
+		}
+		if (type == 1) {
+			return new RefrigeratedContainer(containerCode, grossWeight, parseInt(buffer, fields[6], fields[7],
+					"temperature"));
+		}
+		return new DangerousGoodsContainer(containerCode, grossWeight, parseInt(buffer, fields[6], fields[7],
+				"category"));
+	}
+
+	private int splitDelimited(byte[] buffer, int start, int end, int[] fields) {
+		int count = 0;
+		int fieldStart = start;
+		for (int i = start; i <= end; i++) {
+			if (i == end || buffer[i] == delimiter) {
+				if (count < 4) {
+					fields[2 * count] = fieldStart;
+					fields[2 * count + 1] = i;
+				}
+				count++;
+				fieldStart = i + 1;
+			}
+		}
+		if (count == 4 && fields[6] == fields[7]) {
+			count = 3;		// an empty extra field for general goods
+		}
+		return count;
+	}
+
+	private int splitFixed(byte[] buffer, int start, int end, int[] fields) {
+		int count = 0;
+		int fieldStart = start;
+		for (int i = 0; i < 4 && fieldStart < end; i++) {
+			int fieldEnd = Math.min(end, fieldStart + widths[i]);
+			fields[2 * i] = fieldStart;
+			fields[2 * i + 1] = fieldEnd;
+			fieldStart = fieldEnd;
+			if (!isBlank(buffer, fields[2 * i], fieldEnd)) {
+				count = i + 1;
+			}
+		}
+		return fieldStart < end ? 5 : count;
+	}
+
+	private static boolean isBlank(byte[] buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] != ' ' && buffer[i] != '\t' && buffer[i] != '\r') {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns 0 for general goods, 1 for refrigerated goods and 2 for
+	 * dangerous goods.
+	 */
+	private static int parseType(byte[] buffer, int start, int end) {
+		int length = end - start;
+		for (int type = 0; type < TYPE_NAMES.length; type++) {
+			String name = TYPE_NAMES[type];
+			if (length == 1 && (buffer[start] | 0x20) == (name.charAt(0) | 0x20)) {
+				return type;
+			}
+			if (length == name.length()) {
+				int i = 0;
+				while (i < length && (buffer[start + i] | 0x20) == (name.charAt(i) | 0x20)) {
+					i++;
+				}
+				if (i == length) {
+					return type;
+				}
+			}
+		}
+		throw new IllegalArgumentException("Unknown container type "
+				+ new String(buffer, start, length, StandardCharsets.ISO_8859_1));
+	}
+
+	private static int parseInt(byte[] buffer, int start, int end, String name) {
+		boolean negative = start < end && buffer[start] == '-';
+		int i = negative ? start + 1 : start;
+		if (i == end || end - i > 9) {
+			throw new IllegalArgumentException("Invalid " + name);
+		}
+		int value = 0;
+		for (; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if (digit < 0 || digit > 9) {
+				throw new IllegalArgumentException("Invalid " + name);
+			}
+			value = value * 10 + digit;
+		}
+		return negative ? -value : value;
+	}
+}
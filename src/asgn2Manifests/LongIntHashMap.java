@@ -0,0 +1,217 @@
+package asgn2Manifests;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A hash map from <code>long</code> keys to non-negative <code>int</code>
+ * values, used by the manifest to look up containers by their packed
+ * codes without boxing.  Keys must not be negative, which holds for
+ * every packed container code.
+ * <p>
+ * The map uses open addressing with linear probing, and removes entries
+ * by shifting later entries of the same probe sequence back, so no
+ * tombstones are left behind.
+ * 
+ * @author CAB302 Yunkai (Kian) Zhu n9253921
+ * @version 1.0
+ */
+class LongIntHashMap {
+	
+	// marks a free entry in keys
+	private static final long FREE = -1L;
+	// the value returned by get for a missing key
+	static final int MISSING = -1;
+	
+	private long[] keys;
+	private int[] values;
+	// keys.length - 1, the table length is always a power of two
+	private int mask;
+	private int size;
+	// the saved table to read keys and values from on first use, or null once they are read
+	private ByteBuffer source;
+	
+	/**
+	 * Constructs an empty map sized for the given number of entries.
+	 * 
+	 * @param expectedSize the number of entries expected
+	 */
+	LongIntHashMap(int expectedSize) {
+		int capacity = 16;
+		while (capacity < expectedSize * 2 && capacity < (1 << 30)) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+	
+	/**
+	 * Constructs a map from a table written by <code>writeTo</code>.  The
+	 * table is either copied at once or, if <code>lazy</code>, on first use;
+	 * a lazy map keeps a view of the buffer until then, so the buffer's
+	 * contents must not change.
+	 * 
+	 * @param buffer the buffer, positioned at the start of the table, which
+	 * is moved past the table
+	 * @param capacity the capacity of the table
+	 * @param size the number of entries in the table
+	 * @param lazy whether to copy the table on first use
+	 * @throws IllegalArgumentException if the capacity or size cannot be right
+	 */
+	LongIntHashMap(ByteBuffer buffer, int capacity, int size, boolean lazy) {
+		if (capacity < 16 || Integer.bitCount(capacity) != 1 || size < 0 || size * 2 > capacity
+				|| buffer.remaining() < capacity * 12) {
+			throw new IllegalArgumentException("Bad hash table size");
+		}
+		mask = capacity - 1;
+		this.size = size;
+		source = buffer.slice();
+		source.limit(capacity * 12);
+		buffer.position(buffer.position() + capacity * 12);
+		if (!lazy) {
+			load();
+		}
+	}
+	
+	private void load() {
+		keys = new long[mask + 1];
+		values = new int[mask + 1];
+		source.asLongBuffer().get(keys);
+		source.position(keys.length * 8);
+		source.asIntBuffer().get(values);
+		source = null;
+	}
+	
+	/**
+	 * Writes the table of this map, so it can be read back with a single bulk
+	 * copy instead of one insertion per entry.
+	 * 
+	 * @param buffer the buffer to write to, with at least <code>capacity() * 12</code>
+	 * bytes remaining
+	 */
+	void writeTo(ByteBuffer buffer) {
+		if (source != null) {
+			load();
+		}
+		buffer.asLongBuffer().put(keys);
+		buffer.position(buffer.position() + keys.length * 8);
+		buffer.asIntBuffer().put(values);
+		buffer.position(buffer.position() + values.length * 4);
+	}
+	
+	/**
+	 * Returns the number of entries in the table, which is a power of two.
+	 * 
+	 * @return the table's capacity
+	 */
+	int capacity() {
+		return mask + 1;
+	}
+	
+	private void allocate(int capacity) {
+		keys = new long[capacity];
+		values = new int[capacity];
+		Arrays.fill(keys, FREE);
+		mask = capacity - 1;
+	}
+	
+	private int slot(long key) {
+		long h = key * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32)) & mask;
+	}
+	
+	/**
+	 * Returns the value stored for a key.
+	 * 
+	 * @param key the key
+	 * @return the value, or <code>MISSING</code> if the key is not in the map
+	 */
+	int get(long key) {
+		if (source != null) {
+			load();
+		}
+		for (int i = slot(key); keys[i] != FREE; i = (i + 1) & mask) {
+			if (keys[i] == key) {
+				return values[i];
+			}
+		}
+		return MISSING;
+	}
+	
+	boolean containsKey(long key) {
+		return get(key) != MISSING;
+	}
+	
+	/**
+	 * Stores a value for a key, replacing any previous value.
+	 * 
+	 * @param key the key, which must not be negative
+	 * @param value the value, which must not be negative
+	 */
+	void put(long key, int value) {
+		if (source != null) {
+			load();
+		}
+		int i = slot(key);
+		while (keys[i] != FREE) {
+			if (keys[i] == key) {
+				values[i] = value;
+				return;
+			}
+			i = (i + 1) & mask;
+		}
+		keys[i] = key;
+		values[i] = value;
+		if (++size * 2 > keys.length) {
+			grow();
+		}
+	}
+	
+	/**
+	 * Removes a key from the map.
+	 * 
+	 * @param key the key
+	 * @return the value that was stored, or <code>MISSING</code> if the key was not in the map
+	 */
+	int remove(long key) {
+		if (source != null) {
+			load();
+		}
+		int i = slot(key);
+		while (keys[i] != key) {
+			if (keys[i] == FREE) {
+				return MISSING;
+			}
+			i = (i + 1) & mask;
+		}
+		int removed = values[i];
+		// shift back later entries whose probe sequence passes through the freed entry
+		int free = i;
+		for (int j = (i + 1) & mask; keys[j] != FREE; j = (j + 1) & mask) {
+			int home = slot(keys[j]);
+			if (((j - home) & mask) >= ((j - free) & mask)) {
+				keys[free] = keys[j];
+				values[free] = values[j];
+				free = j;
+			}
+		}
+		keys[free] = FREE;
+		size--;
+		return removed;
+	}
+	
+	int size() {
+		return size;
+	}
+	
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(oldKeys.length * 2);
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldKeys[i] != FREE) {
+				put(oldKeys[i], oldValues[i]);
+			}
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package asgn2Manifests;
+
+import asgn2Containers.FreightContainer;
+
+/**
+ * One change to a cargo manifest, as returned by
+ * <code>CargoManifest.changesSince</code>: a container loaded or unloaded,
+ * or the setpoint of a refrigerated container changed.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestChange {
+	
+	/**
+	 * The kinds of change.
+	 */
+	public enum Kind {
+		/** A container was loaded. */
+		LOAD,
+		/** A container was unloaded. */
+		UNLOAD,
+		/** The thermostat of a refrigerated container was reset. */
+		SETPOINT
+	}
+	
+	private final long version;
+	private final Kind kind;
+	private final FreightContainer container;
+	private final ContainerPosition position;
+	
+	/**
+	 * Constructs a change.
+	 * 
+	 * @param version the version of the manifest the change produced
+	 * @param kind the kind of change
+	 * @param container the container loaded or unloaded, or the container
+	 * with its new setpoint
+	 * @param position the position of the container
+	 */
+	public ManifestChange(long version, Kind kind, FreightContainer container, ContainerPosition position) {
+		this.version = version;
+		this.kind = kind;
+		this.container = container;
+		this.position = position;
+	}
+	
+	/**
+	 * Returns the version of the manifest the change produced.
+	 * 
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	/**
+	 * Returns the kind of change.
+	 * 
+	 * @return the kind of change
+	 */
+	public Kind getKind() {
+		return kind;
+	}
+	
+	/**
+	 * Returns the container which was loaded or unloaded, or the container
+	 * with its new setpoint.
+	 * 
+	 * @return the container
+	 */
+	public FreightContainer getContainer() {
+		return container;
+	}
+	
+	/**
+	 * Returns the position the container was loaded at, unloaded from or is
+	 * at.
+	 * 
+	 * @return the container's position
+	 */
+	public ContainerPosition getPosition() {
+		return position;
+	}
+	
+	@Override
+	public String toString() {
+		return version + ": " + kind + " " + container.getCode() + " at " + position;
+	}
+}
@@ -0,0 +1,94 @@
+package asgn2Manifests;
+
+import java.util.List;
+
+/**
+ * What has changed in a cargo manifest since a given version, as returned
+ * by <code>CargoManifest.changesSince</code>.  Normally this is the list of
+ * changes, oldest first.  If the changes are no longer all remembered a
+ * snapshot of the whole manifest is given instead, which the receiver
+ * should use to replace its copy.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestDelta {
+	
+	private final long fromVersion;
+	private final long toVersion;
+	private final List<ManifestChange> changes;
+	private final ManifestSnapshot snapshot;
+	
+	/**
+	 * Constructs a delta made of changes.
+	 * 
+	 * @param fromVersion the version the changes apply to
+	 * @param toVersion the version after the changes
+	 * @param changes the changes, oldest first
+	 */
+	ManifestDelta(long fromVersion, long toVersion, List<ManifestChange> changes) {
+		this.fromVersion = fromVersion;
+		this.toVersion = toVersion;
+		this.changes = changes;
+		this.snapshot = null;
+	}
+	
+	/**
+	 * Constructs a delta made of a snapshot.
+	 * 
+	 * @param fromVersion the version asked for
+	 * @param snapshot the snapshot of the whole manifest
+	 */
+	ManifestDelta(long fromVersion, ManifestSnapshot snapshot) {
+		this.fromVersion = fromVersion;
+		this.toVersion = snapshot.getVersion();
+		this.changes = null;
+		this.snapshot = snapshot;
+	}
+	
+	/**
+	 * Returns the version the delta was asked for.
+	 * 
+	 * @return the version number
+	 */
+	public long getFromVersion() {
+		return fromVersion;
+	}
+	
+	/**
+	 * Returns the version of the manifest after the delta.
+	 * 
+	 * @return the version number
+	 */
+	public long getToVersion() {
+		return toVersion;
+	}
+	
+	/**
+	 * Returns whether the delta is a snapshot of the whole manifest rather
+	 * than a list of changes.
+	 * 
+	 * @return <code>true</code> if the delta is a snapshot
+	 */
+	public boolean isSnapshot() {
+		return snapshot != null;
+	}
+	
+	/**
+	 * Returns the changes, oldest first.
+	 * 
+	 * @return the changes, or <code>null</code> if the delta is a snapshot
+	 */
+	public List<ManifestChange> getChanges() {
+		return changes;
+	}
+	
+	/**
+	 * Returns the snapshot of the whole manifest.
+	 * 
+	 * @return the snapshot, or <code>null</code> if the delta is a list of changes
+	 */
+	public ManifestSnapshot getSnapshot() {
+		return snapshot;
+	}
+}
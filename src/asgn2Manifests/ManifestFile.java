@@ -0,0 +1,285 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.CargoException;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * Saves a cargo manifest to a compact binary file and restores it again,
+ * reading and writing the file through a memory-mapped
+ * <code>FileChannel</code>.  Restoring places every container straight
+ * into its saved stack: the codes are stored packed, so they are not
+ * parsed or validated again, and the captain's rules are not re-applied.
+ * The index from codes to positions is saved as its hash table, which is
+ * read back with one bulk copy rather than rebuilt one code at a time.
+ * <code>open</code> goes further and reads only the stack headers, leaving
+ * the containers and the index in the file until they are first needed.
+ * <p>
+ * The file consists of a header, a table of stack headers and one record
+ * per container, all big-endian:
+ * <pre>
+ * header (40 bytes): magic "CMAN", format, numStacks, maxHeight, maxWeight,
+ *                    currentWeight, number of containers, capacity of the
+ *                    code index (all int), manifest version (long)
+ * per stack (16 bytes): index of its first record, height, total weight,
+ *                    record kind of its containers (0 when empty) (all int)
+ * per container (16 bytes): packed code (long), kind (byte),
+ *                    gross weight (byte), 0 (short), category or temperature (int)
+ * code index: the keys (long) and then the values (int) of its hash table
+ * </pre>
+ * The records of each stack are stored bottom first, one stack after the
+ * other.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestFile {
+	
+	// "CMAN"
+	static final int MAGIC = 0x434D414E;
+	static final int FORMAT = 1;
+	static final int HEADER_SIZE = 40;
+	static final int STACK_HEADER_SIZE = 16;
+	static final int RECORD_SIZE = 16;
+	static final int INDEX_ENTRY_SIZE = 12;
+	
+	private ManifestFile() {
+	}
+	
+	/**
+	 * Saves a manifest to a file, replacing the file if it exists.  The file
+	 * is written under a temporary name and then renamed, so a crash while
+	 * saving leaves the previous file intact.
+	 * 
+	 * @param manifest the manifest to save
+	 * @param file the file to write
+	 * @throws IOException if the file cannot be written, or the manifest holds
+	 * a kind of container which cannot be saved
+	 */
+	public static void save(CargoManifest manifest, Path file) throws IOException {
+		manifest.pageInAll();
+		int count = manifest.codes.size();
+		int capacity = manifest.codes.capacity();
+		long size = fileSize(manifest.numStacks, count, capacity);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("The manifest is too large for one file");
+		}
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+			buffer.putInt(MAGIC).putInt(FORMAT).putInt(manifest.numStacks).putInt(manifest.maxHeight)
+					.putInt(manifest.maxWeight).putInt(manifest.currentWeight).putInt(count).putInt(capacity)
+					.putLong(manifest.version);
+			int records = HEADER_SIZE + manifest.numStacks * STACK_HEADER_SIZE;
+			int record = 0;
+			for (int i = 0; i < manifest.numStacks; i++) {
+				int height = manifest.heights[i];
+				int bottom = i * manifest.maxHeight;
+				byte kind = 0;
+				for (int j = 0; j < height; j++) {
+					FreightContainer container = manifest.slots[bottom + j];
+					kind = ContainerRecords.kindOf(container);
+					if (kind == 0) {
+						throw new IOException("Cannot save a container of type " + container.getType());
+					}
+					int position = records + (record + j) * RECORD_SIZE;
+					buffer.putLong(position, container.getCode().toLong());
+					buffer.put(position + 8, kind);
+					buffer.put(position + 9, (byte) (int) container.getGrossWeight());
+					buffer.putInt(position + 12, ContainerRecords.extraOf(container));
+				}
+				buffer.putInt(record).putInt(height).putInt(manifest.stackWeights[i]).putInt(kind);
+				record += height;
+			}
+			buffer.position(records + count * RECORD_SIZE);
+			manifest.codes.writeTo(buffer);
+			buffer.force();
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/**
+	 * Restores a manifest saved by <code>save</code>.
+	 * 
+	 * @param file the file to read
+	 * @return the manifest, at the version it was saved at
+	 * @throws IOException if the file cannot be read or is not a valid
+	 * manifest file
+	 */
+	public static CargoManifest load(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CargoManifest manifest = readHeader(buffer, channel.size(), false);
+			int records = HEADER_SIZE + manifest.numStacks * STACK_HEADER_SIZE;
+			for (int i = 0; i < manifest.numStacks; i++) {
+				int stackHeader = HEADER_SIZE + i * STACK_HEADER_SIZE;
+				int first = buffer.getInt(stackHeader);
+				int height = buffer.getInt(stackHeader + 4);
+				for (int j = 0; j < height; j++) {
+					restore(manifest, buffer, records + (first + j) * RECORD_SIZE, i);
+				}
+			}
+			if (manifest.currentWeight != buffer.getInt(20)) {
+				throw new IOException("Corrupt manifest file: wrong total weight");
+			}
+			int restored = 0;
+			for (int i = 0; i < manifest.numStacks; i++) {
+				restored += manifest.heights[i];
+			}
+			if (restored != manifest.codes.size()) {
+				throw new IOException("Corrupt manifest file: wrong number of containers");
+			}
+			manifest.version = buffer.getLong(32);
+			manifest.changesFrom = manifest.version;	// the restored containers are not changes
+			return manifest;
+		}
+	}
+	
+	/**
+	 * Opens a manifest saved by <code>save</code> without reading its
+	 * containers.  Only the header and the stack headers are read, so
+	 * opening takes time in proportion to the number of stacks rather than
+	 * the number of containers.  The records of a stack are read the first
+	 * time the stack is used, and the code index the first time a code is
+	 * looked up, straight from the mapped file, which stays mapped as long
+	 * as the manifest or any of its snapshots needs it.
+	 * <p>
+	 * A corrupt record is not found until its stack is read, when an
+	 * <code>IllegalStateException</code> is thrown.
+	 * 
+	 * @param file the file to read, which must not change while the
+	 * manifest is in use
+	 * @return the manifest, at the version it was saved at
+	 * @throws IOException if the file cannot be read or its headers are not
+	 * valid
+	 */
+	public static CargoManifest open(Path file) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			CargoManifest manifest = readHeader(buffer, channel.size(), true);
+			int count = buffer.getInt(24);
+			long weight = 0;
+			int total = 0;
+			for (int i = 0; i < manifest.numStacks; i++) {
+				int stackHeader = HEADER_SIZE + i * STACK_HEADER_SIZE;
+				int first = buffer.getInt(stackHeader);
+				int height = buffer.getInt(stackHeader + 4);
+				String type = ContainerRecords.typeName(buffer.getInt(stackHeader + 12));
+				if (height < 0 || height > manifest.maxHeight || first < 0 || first > count - height
+						|| (height > 0 && type == null)) {
+					throw new IOException("Corrupt manifest file: bad stack header " + i);
+				}
+				if (height > 0) {
+					try {
+						manifest.stackTypes[i] = manifest.typeOf(type);
+					} catch (ManifestException e) {
+						throw new IOException("Corrupt manifest file: " + e.getMessage());
+					}
+					manifest.heights[i] = height;
+					manifest.emptyStacks.remove(i);
+					if (height < manifest.maxHeight) {
+						manifest.openStacks.get(manifest.stackTypes[i]).add(i);
+					}
+					manifest.loadedStacks.add(i);
+					manifest.emptyStackCount--;
+					manifest.typeRoom[manifest.stackTypes[i]] += manifest.maxHeight - height;
+					manifest.stackWeights[i] = buffer.getInt(stackHeader + 8);
+				}
+				weight += buffer.getInt(stackHeader + 8);
+				total += height;
+			}
+			if (weight != buffer.getInt(20) || weight > manifest.maxWeight) {
+				throw new IOException("Corrupt manifest file: wrong total weight");
+			}
+			if (total != count) {
+				throw new IOException("Corrupt manifest file: wrong number of containers");
+			}
+			manifest.currentWeight = (int) weight;
+			manifest.pager = new StackPager(buffer, manifest.numStacks);
+			manifest.stackPaged = new boolean[manifest.numStacks];
+			manifest.version = buffer.getLong(32);
+			manifest.changesFrom = manifest.version;
+			manifest.lastSnapshot = new ManifestSnapshot(manifest);
+			return manifest;
+		}
+	}
+	
+	/**
+	 * Checks the header and the layout of a mapped manifest file and
+	 * creates an empty manifest with the saved dimensions.
+	 * 
+	 * @param buffer the mapped file
+	 * @param size the size of the file
+	 * @param lazy whether to leave the code index in the file until it is
+	 * first used, rather than reading it now
+	 * @return an empty manifest
+	 * @throws IOException if the file is not a valid manifest file
+	 */
+	static CargoManifest readHeader(MappedByteBuffer buffer, long size, boolean lazy) throws IOException {
+		if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+			throw new IOException("Not a manifest file");
+		}
+		if (buffer.getInt(4) != FORMAT) {
+			throw new IOException("Unsupported manifest file format " + buffer.getInt(4));
+		}
+		int numStacks = buffer.getInt(8);
+		int count = buffer.getInt(24);
+		int capacity = buffer.getInt(28);
+		if (numStacks < 0 || count < 0 || capacity < 0 || size != fileSize(numStacks, count, capacity)) {
+			throw new IOException("Corrupt manifest file: wrong size");
+		}
+		try {
+			CargoManifest manifest = new CargoManifest(numStacks, buffer.getInt(12), buffer.getInt(16));
+			buffer.position(HEADER_SIZE + numStacks * STACK_HEADER_SIZE + count * RECORD_SIZE);
+			manifest.codes = new LongIntHashMap(buffer, capacity, count, lazy);
+			return manifest;
+		} catch (ManifestException | IllegalArgumentException e) {
+			throw new IOException("Corrupt manifest file: " + e.getMessage());
+		}
+	}
+	
+	private static long fileSize(int numStacks, int count, int capacity) {
+		return HEADER_SIZE + (long) numStacks * STACK_HEADER_SIZE + (long) count * RECORD_SIZE
+				+ (long) capacity * INDEX_ENTRY_SIZE;
+	}
+	
+	/**
+	 * Puts the container of one record on top of a stack, checking only
+	 * that the file is consistent.  The code index has already been read,
+	 * so the code is not added to it.
+	 * 
+	 * @param manifest the manifest being restored
+	 * @param buffer the mapped file
+	 * @param position the position of the record in the file
+	 * @param stackNumber the stack the record belongs to
+	 * @throws IOException if the record does not fit the manifest
+	 */
+	static void restore(CargoManifest manifest, MappedByteBuffer buffer, int position, int stackNumber)
+	throws IOException {
+		if (position < 0 || position + RECORD_SIZE > buffer.limit()) {
+			throw new IOException("Corrupt manifest file: bad record at " + position);
+		}
+		long code = buffer.getLong(position);
+		try {
+			FreightContainer container = ContainerRecords.create(code, buffer.get(position + 8),
+					buffer.get(position + 9), buffer.getInt(position + 12));
+			byte type = manifest.typeOf(container.getType());
+			int height = manifest.heights[stackNumber];
+			if (height >= manifest.maxHeight || (height > 0 && manifest.stackTypes[stackNumber] != type)) {
+				throw new IOException("Corrupt manifest file: stack " + stackNumber + " breaks the loading rules");
+			}
+			manifest.place(container, type, stackNumber);
+		} catch (CargoException e) {
+			throw new IOException("Corrupt manifest file: " + e.getMessage());
+		}
+	}
+}
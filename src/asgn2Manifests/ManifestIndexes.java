@@ -0,0 +1,174 @@
+package asgn2Manifests;
+
+import java.util.Arrays;
+
+import asgn2Containers.FreightContainer;
+
+/**
+ * The secondary indexes of a manifest, used by <code>CargoManifest.find</code>:
+ * the slots holding the containers of each owner, each container type, each
+ * gross weight and each dangerous goods category.  Each index keeps an
+ * unordered list of slots per key and the position of each slot in its
+ * list, so adding and removing a container take constant time.
+ * <p>
+ * A query is answered from the shortest list its conditions select, checking
+ * the other conditions on each container in it, so its cost depends on how
+ * many containers match rather than on the size of the ship.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+class ManifestIndexes {
+
+	// gross weights are from 4 to 30 tonnes, see FreightContainer
+	private static final int WEIGHTS = 31;
+	private static final int CATEGORIES = 10;
+
+	private final Postings owners;
+	private final Postings types;
+	private final Postings weights;
+	private final Postings categories;
+
+	/**
+	 * Constructs empty indexes.
+	 *
+	 * @param slotCount the number of slots of the manifest
+	 */
+	ManifestIndexes(int slotCount) {
+		owners = new Postings(ContainerQuery.OWNERS, slotCount);
+		types = new Postings(Byte.MAX_VALUE + 1, slotCount);
+		weights = new Postings(WEIGHTS, slotCount);
+		categories = new Postings(CATEGORIES, slotCount);
+	}
+
+	/**
+	 * Adds a container put in a slot.
+	 *
+	 * @param slot the slot
+	 * @param container the container
+	 * @param type the manifest's number of the container's type
+	 */
+	void add(int slot, FreightContainer container, byte type) {
+		owners.add(ContainerQuery.ownerOf(container.getCode().toLong()), slot);
+		types.add(type, slot);
+		weights.add(container.getGrossWeight(), slot);
+		categories.add(ContainerQuery.categoryOf(container), slot);
+	}
+
+	/**
+	 * Removes a container taken out of a slot.
+	 *
+	 * @param slot the slot
+	 * @param container the container
+	 * @param type the manifest's number of the container's type
+	 */
+	void remove(int slot, FreightContainer container, byte type) {
+		owners.remove(ContainerQuery.ownerOf(container.getCode().toLong()), slot);
+		types.remove(type, slot);
+		weights.remove(container.getGrossWeight(), slot);
+		categories.remove(ContainerQuery.categoryOf(container), slot);
+	}
+
+	/**
+	 * Finds the slots whose containers match a query.
+	 *
+	 * @param query the query
+	 * @param type the manifest's number of the query's type, or -1 if the
+	 * query has no type condition
+	 * @param slots the manifest's slots
+	 * @return the matching slots, in increasing order
+	 */
+	int[] find(ContainerQuery query, int type, FreightContainer[] slots) {
+		// the shortest list selected by a condition, or several lists for a range of weights
+		Postings source = null;
+		int firstKey = 0;
+		int lastKey = -1;
+		int shortest = Integer.MAX_VALUE;
+		if (query.owner >= 0 && owners.size(query.owner) < shortest) {
+			source = owners;
+			firstKey = lastKey = query.owner;
+			shortest = owners.size(query.owner);
+		}
+		if (type >= 0 && types.size(type) < shortest) {
+			source = types;
+			firstKey = lastKey = type;
+			shortest = types.size(type);
+		}
+		if (query.category >= 0 && categories.size(query.category) < shortest) {
+			source = categories;
+			firstKey = lastKey = query.category;
+			shortest = categories.size(query.category);
+		}
+		int lightest = Math.max(query.minWeight, 0);
+		int heaviest = Math.min(query.maxWeight, WEIGHTS - 1);
+		int inRange = 0;
+		for (int weight = lightest; weight <= heaviest; weight++) {
+			inRange += weights.size(weight);
+		}
+		if (source == null || inRange < shortest) {
+			source = weights;
+			firstKey = lightest;
+			lastKey = heaviest;
+		}
+
+		int[] found = new int[16];
+		int count = 0;
+		for (int key = firstKey; key <= lastKey; key++) {
+			int[] list = source.lists[key];
+			for (int i = 0; i < source.sizes[key]; i++) {
+				FreightContainer container = slots[list[i]];
+				if (query.matches(container) && (query.type == null || container.getType().equals(query.type))) {
+					if (count == found.length) {
+						found = Arrays.copyOf(found, count * 2);
+					}
+					found[count++] = list[i];
+				}
+			}
+		}
+		found = Arrays.copyOf(found, count);
+		Arrays.sort(found);
+		return found;
+	}
+
+	/**
+	 * One index: an unordered list of slots for each key.
+	 */
+	private static final class Postings {
+
+		// the slots of each key, null until the key is used
+		final int[][] lists;
+		final int[] sizes;
+		// the position of each slot in the list of its key
+		private final int[] where;
+
+		Postings(int keys, int slotCount) {
+			lists = new int[keys][];
+			sizes = new int[keys];
+			where = new int[slotCount];
+		}
+
+		int size(int key) {
+			return sizes[key];
+		}
+
+		void add(int key, int slot) {
+			int[] list = lists[key];
+			int size = sizes[key];
+			if (list == null) {
+				list = lists[key] = new int[8];
+			} else if (size == list.length) {
+				list = lists[key] = Arrays.copyOf(list, size * 2);
+			}
+			list[size] = slot;
+			where[slot] = size;
+			sizes[key] = size + 1;
+		}
+
+		void remove(int key, int slot) {
+			int[] list = lists[key];
+			int last = list[--sizes[key]];		// move the last slot into the removed one's place
+			list[where[slot]] = last;
+			where[last] = where[slot];
+		}
+	}
+}
@@ -0,0 +1,454 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.CargoException;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * A cargo manifest whose changes are written to an append-only journal,
+ * so that they survive a crash.  Every successful load, unload and
+ * temperature change is applied to the manifest as usual and then appended
+ * to the journal as a checksummed record; failed operations are not
+ * journalled.  Reading the manifest is passed straight through.
+ * <p>
+ * Records are forced to disk in groups: a group is written once
+ * <code>groupSize</code> records are waiting, when the oldest waiting
+ * record is <code>maxDelayMillis</code> old, or when <code>sync</code> or
+ * <code>close</code> is called.  An operation is durable once the group
+ * holding it has been written, so a crash loses at most the last
+ * unwritten group.
+ * <p>
+ * <code>checkpoint</code> saves the manifest with <code>ManifestFile</code>
+ * and starts an empty journal.  <code>open</code> restores the last
+ * checkpoint and replays the journal over it, stopping at the first torn
+ * or corrupt record.  Each record carries the manifest version it produced,
+ * so records already contained in the checkpoint are skipped if a crash
+ * came between saving the checkpoint and emptying the journal.
+ * <p>
+ * The journal is a sequence of fixed-size big-endian records:
+ * <pre>
+ * CRC32 of the rest of the record (int), manifest version (long),
+ * operation (byte), record kind (byte), gross weight (byte), 0 (byte),
+ * packed code (long), category or temperature (int)
+ * </pre>
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestJournal implements AutoCloseable {
+
+	static final int RECORD_SIZE = 28;
+	static final byte LOAD = 1;
+	static final byte UNLOAD = 2;
+	static final byte TEMPERATURE = 3;
+
+	private final CargoManifest manifest;
+	private final Path snapshotFile;
+	private final FileChannel journal;
+	private final long maxDelayNanos;
+	// records waiting to be written, groupSize of them at most
+	private final ByteBuffer group;
+	private final CRC32 crc = new CRC32();
+	private final ScheduledExecutorService flusher;
+	// time the oldest waiting record was added
+	private long groupStarted;
+	// the first error writing the journal, after which nothing more is accepted
+	private IOException failure;
+
+	private ManifestJournal(CargoManifest manifest, Path snapshotFile, FileChannel journal, int groupSize,
+			long maxDelayMillis) {
+		this.manifest = manifest;
+		this.snapshotFile = snapshotFile;
+		this.journal = journal;
+		this.maxDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxDelayMillis);
+		group = ByteBuffer.allocateDirect(groupSize * RECORD_SIZE);
+		if (maxDelayMillis > 0) {
+			flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, "manifest journal");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			flusher.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					flushIfDue();
+				}
+			}, maxDelayMillis, maxDelayMillis, TimeUnit.MILLISECONDS);
+		} else {
+			flusher = null;
+		}
+	}
+
+	/**
+	 * Opens a journalled manifest, recovering it from the last checkpoint
+	 * and the journal.
+	 *
+	 * @param snapshotFile the checkpoint file
+	 * @param journalFile the journal file
+	 * @param initial the empty manifest to start from if there is no
+	 * checkpoint yet
+	 * @param groupSize the number of records written to disk together, at
+	 * least 1
+	 * @param maxDelayMillis the longest time a record waits to be written, or
+	 * 0 to wait only for a full group or <code>sync</code>
+	 * @return the journalled manifest
+	 * @throws IOException if the checkpoint or the journal cannot be read
+	 * @throws IllegalArgumentException if the group size or delay is invalid
+	 */
+	public static ManifestJournal open(Path snapshotFile, Path journalFile, CargoManifest initial, int groupSize,
+			long maxDelayMillis) throws IOException {
+		if (groupSize < 1 || maxDelayMillis < 0) {
+			throw new IllegalArgumentException("Invalid group commit settings");
+		}
+		CargoManifest manifest = Files.exists(snapshotFile) ? ManifestFile.open(snapshotFile) : initial;
+		FileChannel journal = FileChannel.open(journalFile, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		try {
+			long end = replay(manifest, journal);
+			journal.truncate(end);		// drop a torn or corrupt tail before appending to it
+			journal.position(end);
+			journal.force(true);
+		} catch (IOException e) {
+			journal.close();
+			throw e;
+		}
+		return new ManifestJournal(manifest, snapshotFile, journal, groupSize, maxDelayMillis);
+	}
+
+	/**
+	 * Applies the records of a journal to a manifest, up to the first record
+	 * which is incomplete or fails its checksum.
+	 *
+	 * @param manifest the manifest to apply the records to
+	 * @param journal the journal
+	 * @return the position after the last good record
+	 * @throws IOException if the journal cannot be read or a good record
+	 * cannot be applied
+	 */
+	private static long replay(CargoManifest manifest, FileChannel journal) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4096 / RECORD_SIZE * RECORD_SIZE);
+		CRC32 crc = new CRC32();
+		byte[] body = new byte[RECORD_SIZE - 4];
+		long position = 0;
+		journal.position(0);
+		while (true) {
+			int read = journal.read(buffer);
+			buffer.flip();
+			while (buffer.remaining() >= RECORD_SIZE) {
+				int checksum = buffer.getInt();
+				buffer.get(body);
+				crc.reset();
+				crc.update(body, 0, body.length);
+				if ((int) crc.getValue() != checksum) {
+					return position;
+				}
+				apply(manifest, ByteBuffer.wrap(body), position);
+				position += RECORD_SIZE;
+			}
+			buffer.compact();
+			if (read < 0) {
+				return position;
+			}
+		}
+	}
+
+	/**
+	 * Applies one journal record to a manifest, unless the manifest already
+	 * contains it.
+	 *
+	 * @param manifest the manifest
+	 * @param record the record without its checksum
+	 * @param position the position of the record in the journal
+	 * @throws IOException if the record does not follow on from the manifest
+	 */
+	private static void apply(CargoManifest manifest, ByteBuffer record, long position) throws IOException {
+		long version = record.getLong();
+		if (version <= manifest.version) {
+			return;
+		}
+		byte operation = record.get();
+		byte kind = record.get();
+		int grossWeight = record.get();
+		record.get();
+		long code = record.getLong();
+		int extra = record.getInt();
+		try {
+			switch (operation) {
+			case LOAD:
+				manifest.loadContainer(ContainerRecords.create(code, kind, grossWeight, extra));
+				break;
+			case UNLOAD:
+				manifest.unloadContainer(ContainerCode.fromLong(code));
+				break;
+			case TEMPERATURE:
+				manifest.setTemperature(ContainerCode.fromLong(code), extra);
+				break;
+			default:
+				throw new IOException("Corrupt journal: unknown operation at " + position);
+			}
+		} catch (CargoException e) {
+			throw new IOException("Corrupt journal: record at " + position + " cannot be applied: " + e.getMessage());
+		}
+		if (manifest.version != version) {
+			throw new IOException("Corrupt journal: record at " + position + " is out of sequence");
+		}
+	}
+
+	/**
+	 * Loads a freight container onto the ship as
+	 * <code>CargoManifest.loadContainer</code> does, and journals the load.
+	 *
+	 * @param newContainer the new freight container to be loaded
+	 * @throws ManifestException if the container cannot be loaded
+	 * @throws IOException if the container is of a kind the journal cannot
+	 * store, or the journal has failed
+	 */
+	public synchronized void loadContainer(FreightContainer newContainer) throws ManifestException, IOException {
+		checkFailure();
+		byte kind = ContainerRecords.kindOf(newContainer);
+		if (kind == 0) {
+			throw new IOException("Cannot journal a container of type " + newContainer.getType());
+		}
+		manifest.loadContainer(newContainer);
+		append(LOAD, kind, newContainer.getGrossWeight(), newContainer.getCode().toLong(),
+				ContainerRecords.extraOf(newContainer));
+	}
+
+	/**
+	 * Unloads a container from the ship as
+	 * <code>CargoManifest.unloadContainer</code> does, and journals the unload.
+	 *
+	 * @param containerId the code of the container to be unloaded
+	 * @throws ManifestException if the container is not accessible
+	 * @throws IOException if the journal has failed
+	 */
+	public synchronized void unloadContainer(ContainerCode containerId) throws ManifestException, IOException {
+		checkFailure();
+		manifest.unloadContainer(containerId);
+		append(UNLOAD, (byte) 0, 0, containerId.toLong(), 0);
+	}
+
+	/**
+	 * Resets the thermostat of a refrigerated container as
+	 * <code>CargoManifest.setTemperature</code> does, and journals the change.
+	 *
+	 * @param containerId the code of the container
+	 * @param temperature the new temperature (in degrees Celsius)
+	 * @throws ManifestException if the temperature cannot be set
+	 * @throws IOException if the journal has failed
+	 */
+	public synchronized void setTemperature(ContainerCode containerId, Integer temperature)
+	throws ManifestException, IOException {
+		checkFailure();
+		manifest.setTemperature(containerId, temperature);
+		append(TEMPERATURE, (byte) 0, 0, containerId.toLong(), temperature);
+	}
+
+	/**
+	 * Writes all waiting records to disk.
+	 *
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized void sync() throws IOException {
+		checkFailure();
+		writeGroup();
+	}
+
+	/**
+	 * Saves the manifest to the checkpoint file and empties the journal, so
+	 * that recovery no longer needs to replay it.
+	 *
+	 * @throws IOException if the checkpoint or the journal cannot be written
+	 */
+	public synchronized void checkpoint() throws IOException {
+		checkFailure();
+		try {
+			ManifestFile.save(manifest, snapshotFile);
+			forceDirectory(snapshotFile.toAbsolutePath().getParent());	// the rename must outlive the truncation
+			group.clear();
+			journal.truncate(0);
+			journal.position(0);
+			journal.force(true);
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		}
+	}
+
+	/**
+	 * Forces a directory's entries to disk, e.g., the rename which replaced
+	 * a file in it.  Where directories cannot be opened, e.g., on Windows,
+	 * Java offers no way to do so and this does nothing.
+	 *
+	 * @param directory the directory
+	 * @throws IOException if the directory cannot be forced to disk
+	 */
+	private static void forceDirectory(Path directory) throws IOException {
+		FileChannel channel;
+		try {
+			channel = FileChannel.open(directory, StandardOpenOption.READ);
+		} catch (IOException e) {
+			return;
+		}
+		try {
+			channel.force(true);
+		} finally {
+			channel.close();
+		}
+	}
+
+	/**
+	 * Writes all waiting records and closes the journal.
+	 *
+	 * @throws IOException if the journal cannot be written
+	 */
+	public synchronized void close() throws IOException {
+		if (flusher != null) {
+			flusher.shutdownNow();
+		}
+		try {
+			if (failure == null) {
+				writeGroup();
+			}
+		} finally {
+			journal.close();
+		}
+	}
+
+	/**
+	 * Returns a snapshot of the manifest, as <code>CargoManifest.snapshot</code> does.
+	 *
+	 * @return the snapshot
+	 */
+	public synchronized ManifestSnapshot snapshot() {
+		return manifest.snapshot();
+	}
+
+	/**
+	 * Returns which stack holds a particular container, as
+	 * <code>CargoManifest.whichStack</code> does.
+	 *
+	 * @param queryContainer the container code for the container of interest
+	 * @return the number of the stack, or <code>null</code> if the container is not on board
+	 */
+	public synchronized Integer whichStack(ContainerCode queryContainer) {
+		return manifest.whichStack(queryContainer);
+	}
+
+	/**
+	 * Returns how high in its stack a particular container is, as
+	 * <code>CargoManifest.howHigh</code> does.
+	 *
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's height, or <code>null</code> if the container is not on board
+	 */
+	public synchronized Integer howHigh(ContainerCode queryContainer) {
+		return manifest.howHigh(queryContainer);
+	}
+
+	/**
+	 * Returns the position of a particular container, as
+	 * <code>CargoManifest.locate</code> does.
+	 *
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's position, or <code>null</code> if the container is not on board
+	 */
+	public synchronized ContainerPosition locate(ContainerCode queryContainer) {
+		return manifest.locate(queryContainer);
+	}
+
+	/**
+	 * Returns the contents of a stack, bottom first, as
+	 * <code>CargoManifest.toArray</code> does.
+	 *
+	 * @param stackNo the number of the stack of interest
+	 * @return the stack's freight containers as an array
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public synchronized FreightContainer[] toArray(Integer stackNo) throws ManifestException {
+		return manifest.toArray(stackNo);
+	}
+
+	/**
+	 * Returns the version of the manifest, as
+	 * <code>CargoManifest.getVersion</code> does.
+	 *
+	 * @return the version number
+	 */
+	public synchronized long getVersion() {
+		return manifest.getVersion();
+	}
+
+	public synchronized String toString(ContainerCode toFind) {
+		return manifest.toString(toFind);
+	}
+
+	public synchronized String toString() {
+		return manifest.toString();
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("The journal has failed", failure);
+		}
+	}
+
+	private void append(byte operation, byte kind, int grossWeight, long code, int extra) throws IOException {
+		if (group.position() == 0) {
+			groupStarted = System.nanoTime();
+		}
+		int start = group.position();
+		group.putInt(0).putLong(manifest.version).put(operation).put(kind).put((byte) grossWeight).put((byte) 0)
+				.putLong(code).putInt(extra);
+		crc.reset();
+		for (int i = start + 4; i < start + RECORD_SIZE; i++) {
+			crc.update(group.get(i));
+		}
+		group.putInt(start, (int) crc.getValue());
+		if (!group.hasRemaining()) {
+			writeGroup();
+		}
+	}
+
+	private synchronized void flushIfDue() {
+		if (failure == null && group.position() > 0 && System.nanoTime() - groupStarted >= maxDelayNanos) {
+			try {
+				writeGroup();
+			} catch (IOException e) {
+				// kept in failure and reported by the next operation
+			}
+		}
+	}
+
+	private void writeGroup() throws IOException {
+		if (group.position() == 0) {
+			return;
+		}
+		group.flip();
+		try {
+			while (group.hasRemaining()) {
+				journal.write(group);
+			}
+			journal.force(false);
+		} catch (IOException e) {
+			failure = e;
+			throw e;
+		} finally {
+			group.clear();
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package asgn2Manifests;
+
+/**
+ * The outcome of <code>CargoManifest.tryLoad</code> or
+ * <code>CargoManifest.tryUnload</code>: either <code>DONE</code> or the
+ * reason the operation was rejected.  Each reason carries the message of
+ * the <code>ManifestException</code> which <code>loadContainer</code> or
+ * <code>unloadContainer</code> throws for it.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public enum ManifestResult {
+
+	/** The container was loaded or unloaded. */
+	DONE(null),
+	/** Loading the container would exceed the ship's weight limit. */
+	WEIGHT_LIMIT("Exceed the ship's weight limit"),
+	/** A container with the same code is already on board. */
+	DUPLICATE_CODE("A duplicate code has been found"),
+	/** There is no empty stack, and no stack of the container's type with room left. */
+	NO_SPACE("No suitable space can be found for this container"),
+	/** Putting the container in the space found would take the ship's trim or list beyond its limits. */
+	OUT_OF_BALANCE("The ship would be out of balance"),
+	/** The manifest cannot tell apart any more container types. */
+	TOO_MANY_TYPES("Too many container types"),
+	/** The container to unload is not on board. */
+	NOT_ON_BOARD("No such container"),
+	/** The container to unload is not on the top of its stack. */
+	NOT_ON_TOP("The container is not on the top of that stack");
+
+	private final String message;
+
+	private ManifestResult(String message) {
+		this.message = message;
+	}
+
+	/**
+	 * Returns whether the operation was done.
+	 *
+	 * @return <code>true</code> if the result is <code>DONE</code>
+	 */
+	public boolean isDone() {
+		return this == DONE;
+	}
+
+	/**
+	 * Returns why the operation was rejected.
+	 *
+	 * @return the message, or <code>null</code> for <code>DONE</code>
+	 */
+	public String getMessage() {
+		return message;
+	}
+}
@@ -0,0 +1,286 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * An immutable view of a cargo manifest at one version, as returned by
+ * <code>CargoManifest.snapshot</code>.  A snapshot may be read by any
+ * number of threads while the manifest it came from goes on changing.
+ * <p>
+ * The stacks are held in chunks of 64.  A new snapshot copies the table
+ * of chunks, and only copies those chunks and stacks which changed since
+ * the previous snapshot; everything else is shared with it.  For a
+ * manifest opened by <code>ManifestFile.open</code>, stacks which have not
+ * changed since it was opened are read from the file when they are needed.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+public class ManifestSnapshot {
+	
+	// number of stacks per chunk, a power of two
+	private static final int CHUNK_BITS = 6;
+	private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+	// shared by every empty stack
+	private static final FreightContainer[] EMPTY_STACK = new FreightContainer[0];
+	
+	private final long version;
+	private final int numStacks;
+	private final int maxHeight;
+	private final int maxWeight;
+	private final int currentWeight;
+	// the containers of stack s, bottom first, are chunks[s >> CHUNK_BITS][s & (CHUNK_SIZE - 1)],
+	// or null if the stack has not changed since the manifest was opened
+	private final FreightContainer[][][] chunks;
+	// reads the stacks which are null in chunks, or null if there are none
+	private final StackPager pager;
+	// the slot (stack * maxHeight + height) of each container, built on first use
+	private volatile LongIntHashMap codes;
+	
+	/**
+	 * Constructs the snapshot of a new, empty manifest, or of a manifest just
+	 * opened by <code>ManifestFile.open</code>.
+	 * 
+	 * @param manifest the manifest
+	 */
+	ManifestSnapshot(CargoManifest manifest) {
+		version = manifest.version;
+		numStacks = manifest.numStacks;
+		maxHeight = manifest.maxHeight;
+		maxWeight = manifest.maxWeight;
+		currentWeight = manifest.currentWeight;
+		pager = manifest.pager;
+		chunks = new FreightContainer[(numStacks + CHUNK_SIZE - 1) >> CHUNK_BITS][][];
+		FreightContainer[][] emptyChunk = new FreightContainer[CHUNK_SIZE][];
+		if (pager == null) {
+			Arrays.fill(emptyChunk, EMPTY_STACK);
+		}
+		Arrays.fill(chunks, emptyChunk);
+	}
+	
+	/**
+	 * Constructs a snapshot of a manifest from the previous snapshot and the
+	 * stacks changed since then.
+	 * 
+	 * @param manifest the manifest
+	 * @param previous the previous snapshot of the manifest
+	 */
+	ManifestSnapshot(CargoManifest manifest, ManifestSnapshot previous) {
+		version = manifest.version;
+		numStacks = manifest.numStacks;
+		maxHeight = manifest.maxHeight;
+		maxWeight = manifest.maxWeight;
+		currentWeight = manifest.currentWeight;
+		pager = previous.pager;
+		chunks = previous.chunks.clone();
+		for (int i = 0; i < manifest.changedCount; i++) {
+			int stackNumber = manifest.changedStacks[i];
+			int chunk = stackNumber >> CHUNK_BITS;
+			if (chunks[chunk] == previous.chunks[chunk]) {
+				chunks[chunk] = chunks[chunk].clone(); // first change in this chunk
+			}
+			int height = manifest.heights[stackNumber];
+			int bottom = stackNumber * maxHeight;
+			chunks[chunk][stackNumber & (CHUNK_SIZE - 1)] = height == 0 ? EMPTY_STACK
+					: Arrays.copyOfRange(manifest.slots, bottom, bottom + height);
+		}
+	}
+	
+	private FreightContainer[] stack(int stackNumber) {
+		FreightContainer[] stack = chunks[stackNumber >> CHUNK_BITS][stackNumber & (CHUNK_SIZE - 1)];
+		if (stack == null) {
+			stack = new FreightContainer[pager.height(stackNumber)];
+			pager.read(stackNumber, stack, 0);
+		}
+		return stack;
+	}
+	
+	/**
+	 * Returns the version of the manifest this snapshot shows.
+	 * 
+	 * @return the version number
+	 */
+	public long getVersion() {
+		return version;
+	}
+	
+	public int getStackNumber() {
+		return numStacks;
+	}
+	
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+	
+	public int getMaxWeight() {
+		return maxWeight;
+	}
+	
+	/**
+	 * Returns the total weight of the containers on board.
+	 * 
+	 * @return the weight (in tonnes)
+	 */
+	public int getCurrentWeight() {
+		return currentWeight;
+	}
+	
+	/**
+	 * Returns the number of containers in a stack.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @return the number of containers in the stack
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public int getHeight(int stackNo) throws ManifestException {
+		if (stackNo < 0 || stackNo > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+		FreightContainer[] stack = chunks[stackNo >> CHUNK_BITS][stackNo & (CHUNK_SIZE - 1)];
+		return stack == null ? pager.height(stackNo) : stack.length;
+	}
+	
+	/**
+	 * Returns the container at a given height in a stack, without copying
+	 * the stack.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @param height the height in the stack, zero for the bottom container
+	 * @return the container
+	 * @throws ManifestException if there is no such stack on the ship, or no
+	 * container at that height
+	 */
+	public FreightContainer getContainer(int stackNo, int height) throws ManifestException {
+		if (height < 0 || height >= getHeight(stackNo)) {
+			throw new ManifestException("No such container");
+		}
+		FreightContainer[] stack = chunks[stackNo >> CHUNK_BITS][stackNo & (CHUNK_SIZE - 1)];
+		return stack == null ? pager.container(stackNo, height) : stack[height];
+	}
+	
+	/**
+	 * Returns the contents of a particular stack as an array,
+	 * starting with the bottommost container at position zero in the array.
+	 * 
+	 * @param stackNo the number of the stack of interest
+	 * @return the stack's freight containers as an array
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public FreightContainer[] toArray(Integer stackNo) throws ManifestException {
+		getHeight(stackNo);
+		FreightContainer[] stack = stack(stackNo);
+		return stack.length == 0 ? stack : stack.clone();
+	}
+	
+	/**
+	 * Returns the position of a particular container in this snapshot, or
+	 * <code>null</code> if it was not on board.  The first look-up in a
+	 * snapshot indexes all its containers.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's position, or <code>null</code> if the container
+	 * is not on board
+	 */
+	public ContainerPosition locate(ContainerCode queryContainer) {
+		int slot = codeIndex().get(queryContainer.toLong());
+		if (slot == LongIntHashMap.MISSING) {
+			return null;
+		} else {
+			return new ContainerPosition(slot / maxHeight, slot % maxHeight);
+		}
+	}
+	
+	/**
+	 * Returns which stack holds a particular container in this snapshot.
+	 * See <code>CargoManifest.whichStack</code>.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the number of the stack with the container in it, or <code>null</code>
+	 * if the container is not on board
+	 */
+	public Integer whichStack(ContainerCode queryContainer) {
+		ContainerPosition position = locate(queryContainer);
+		return position == null ? null : position.getStack();
+	}
+	
+	/**
+	 * Returns how high in its stack a particular container is in this
+	 * snapshot.  See <code>CargoManifest.howHigh</code>.
+	 * 
+	 * @param queryContainer the container code for the container of interest
+	 * @return the container's height in the stack, or <code>null</code>
+	 * if the container is not on board
+	 */
+	public Integer howHigh(ContainerCode queryContainer) {
+		ContainerPosition position = locate(queryContainer);
+		return position == null ? null : position.getHeight();
+	}
+	
+	private LongIntHashMap codeIndex() {
+		LongIntHashMap index = codes;
+		if (index == null) {
+			index = new LongIntHashMap(16);
+			for (int i = 0; i < numStacks; i++) {
+				FreightContainer[] stack = stack(i);
+				for (int j = 0; j < stack.length; j++) {
+					index.put(stack[j].getCode().toLong(), i * maxHeight + j);
+				}
+			}
+			codes = index; // safely published through the volatile field
+		}
+		return index;
+	}
+	
+	/**
+	 * Returns the same text as <code>CargoManifest.toString(ContainerCode)</code>
+	 * for this snapshot.
+	 * 
+	 * @param toFind the container to highlight, or <code>null</code>
+	 * @return the text
+	 */
+	public String toString(ContainerCode toFind) {
+		StringBuilder toReturn = new StringBuilder(numStacks * 5);
+		try {
+			render(toReturn, toFind, 0, numStacks);
+		} catch (IOException e) {
+			throw new AssertionError(e); // a StringBuilder does not throw IOException
+		} catch (ManifestException e) {
+			throw new AssertionError(e); // all stacks are in range
+		}
+		return toReturn.toString();
+	}
+	
+	/**
+	 * Writes the text of <code>toString(ContainerCode)</code> for a range of
+	 * stacks straight to the given output.  See
+	 * <code>CargoManifest.render</code>.
+	 * 
+	 * @param out where to write the text, e.g., a <code>Writer</code>
+	 * @param toFind the container to highlight, or <code>null</code>
+	 * @param fromStack the first stack to write
+	 * @param toStack one more than the last stack to write
+	 * @throws IOException if writing to the output fails
+	 * @throws ManifestException if the range of stacks is not on the ship
+	 */
+	public void render(Appendable out, ContainerCode toFind, int fromStack, int toStack)
+	throws IOException, ManifestException {
+		if (fromStack < 0 || toStack > numStacks || fromStack > toStack) {
+			throw new ManifestException("No such stack");
+		}
+		long find = toFind == null ? ContainerCode.INVALID : toFind.toLong();
+		for (int i = fromStack; i < toStack; ++i) {
+			FreightContainer[] stack = stack(i);
+			CargoManifest.renderStack(out, stack, 0, stack.length, find);
+		}
+	}
+	
+	@Override
+	public String toString() {
+		return toString(null);
+	}
+}
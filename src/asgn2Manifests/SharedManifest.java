@@ -0,0 +1,272 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * Publishes a live cargo manifest in a memory-mapped file, so that viewers
+ * in other processes on the same host can read it in place through a
+ * <code>SharedManifestView</code> instead of each holding a copy.  The
+ * writing process changes its <code>CargoManifest</code> as usual and calls
+ * <code>publish</code> whenever the viewers should see the changes; only
+ * the changes since the last publication, taken from
+ * <code>CargoManifest.changesSince</code>, are written.
+ * <p>
+ * The file is guarded by a sequence number, as in a seqlock: the writer
+ * makes it odd before changing the file and even again afterwards, and a
+ * reader which finds it odd, or changed by the time it has finished
+ * reading, reads again.  Readers therefore never block the writer and
+ * never see a half-published change, and nothing is copied or serialized
+ * between the processes.  There must be only one writer per file.
+ * <p>
+ * The file has a fixed size, set by the ship's dimensions, and is laid out
+ * in the host's byte order, since it is only shared on one host:
+ * <pre>
+ * header (48 bytes): magic "CSHM", format, numStacks, maxHeight, maxWeight,
+ *                    0 (all int), sequence number (long), manifest version (long),
+ *                    currentWeight (int), 0 (int), 0 (long)
+ * per stack (4 bytes): height (int), padded to a multiple of 8 bytes
+ * per slot (16 bytes): packed code (long), kind (byte),
+ *                    gross weight (byte), 0 (short), category or temperature (int)
+ * </pre>
+ * Slot <code>stack * maxHeight + height</code> holds the container at that
+ * position; slots above a stack's height are not used.  A file on a memory
+ * file system such as <code>/dev/shm</code> is never written to disk.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class SharedManifest {
+
+	// "CSHM"
+	static final int MAGIC = 0x4353484D;
+	static final int FORMAT = 1;
+	static final int HEADER_SIZE = 48;
+	static final int SEQUENCE = 24;
+	static final int VERSION = 32;
+	static final int CURRENT_WEIGHT = 40;
+	static final int SLOT_SIZE = 16;
+
+	// written and read only for the ordering of the accesses to the file around it, see fence()
+	private static volatile int fence;
+
+	private final CargoManifest manifest;
+	private final MappedByteBuffer buffer;
+	private final int slots;
+	private long published = -1;
+	private long sequence;
+
+	private SharedManifest(CargoManifest manifest, MappedByteBuffer buffer) {
+		this.manifest = manifest;
+		this.buffer = buffer;
+		slots = slotsOffset(manifest.numStacks);
+	}
+
+	/**
+	 * Creates the shared file of a manifest, replacing the file if it exists,
+	 * and publishes the manifest's current contents.
+	 * <p>
+	 * Viewers may still have the file mapped, e.g., when the writer is
+	 * restarted, so it is never truncated under them.  A shared manifest
+	 * file for a ship of the same dimensions is published over in place,
+	 * and its sequence number carries on from where it was, so a query
+	 * which began before the restart cannot take the new contents for the
+	 * old.  Any other file is replaced by a new file renamed over it; its
+	 * viewers keep seeing its last publication until they open the file
+	 * again.
+	 *
+	 * @param manifest the manifest, which must only be changed by the thread
+	 * calling <code>publish</code>
+	 * @param file the file to share the manifest in
+	 * @return the writer of the file
+	 * @throws IOException if the file cannot be written, or the manifest holds
+	 * a kind of container which cannot be shared
+	 */
+	public static SharedManifest create(CargoManifest manifest, Path file) throws IOException {
+		long size = fileSize(manifest.numStacks, manifest.maxHeight);
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("The manifest is too large for one file");
+		}
+		long sequence = 0;
+		boolean inPlace = false;
+		if (Files.exists(file)) {
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				if (channel.size() >= HEADER_SIZE) {
+					ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.nativeOrder());
+					while (header.hasRemaining()) {
+						if (channel.read(header, header.position()) < 0) {
+							break;
+						}
+					}
+					if (header.getInt(0) == MAGIC) {
+						sequence = (header.getLong(SEQUENCE) + 1) & ~1L;	// even, and not before the old one
+						inPlace = header.getInt(4) == FORMAT && header.getInt(8) == manifest.numStacks
+								&& header.getInt(12) == manifest.maxHeight && header.getInt(16) == manifest.maxWeight
+								&& channel.size() == size;
+					}
+				}
+			}
+		}
+		
+		Path target = file;
+		if (!inPlace) {
+			Path directory = file.toAbsolutePath().getParent();
+			target = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+		}
+		try {
+			MappedByteBuffer buffer;
+			try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.READ,
+					StandardOpenOption.WRITE)) {
+				buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);	// stays mapped after closing
+			}
+			buffer.order(ByteOrder.nativeOrder());
+			if (!inPlace) {
+				buffer.putInt(0, MAGIC).putInt(4, FORMAT).putInt(8, manifest.numStacks)
+						.putInt(12, manifest.maxHeight).putInt(16, manifest.maxWeight).putLong(SEQUENCE, sequence);
+			}
+			SharedManifest shared = new SharedManifest(manifest, buffer);
+			shared.sequence = sequence;
+			shared.publish();
+			if (!inPlace) {
+				Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			}
+			return shared;
+		} finally {
+			if (!inPlace) {
+				Files.deleteIfExists(target);		// only left if something failed
+			}
+		}
+	}
+
+	/**
+	 * Returns the last version of the manifest published.
+	 *
+	 * @return the version number
+	 */
+	public long getPublishedVersion() {
+		return published;
+	}
+
+	/**
+	 * Writes the changes made to the manifest since the last publication to
+	 * the shared file, where readers see all of them at once.  If the changes
+	 * are no longer remembered by the manifest, its whole contents are
+	 * written instead.
+	 *
+	 * @return the version published
+	 * @throws IOException if the manifest holds a kind of container which
+	 * cannot be shared
+	 */
+	public long publish() throws IOException {
+		ManifestDelta delta = manifest.changesSince(published);
+		if (delta.getToVersion() == published) {
+			return published;
+		}
+		// check every container first, so a reader never sees part of a publication
+		ManifestSnapshot snapshot = delta.getSnapshot();
+		try {
+			if (delta.isSnapshot()) {
+				for (int i = 0; i < manifest.numStacks; i++) {
+					for (int j = 0; j < snapshot.getHeight(i); j++) {
+						checkKind(snapshot.getContainer(i, j));
+					}
+				}
+			} else {
+				for (ManifestChange change : delta.getChanges()) {
+					checkKind(change.getContainer());
+				}
+			}
+		} catch (ManifestException e) {
+			throw new AssertionError(e); // all positions are in range
+		}
+		
+		buffer.putLong(SEQUENCE, ++sequence);		// odd: readers wait
+		fence();
+		try {
+			if (delta.isSnapshot()) {
+				for (int i = 0; i < manifest.numStacks; i++) {
+					FreightContainer[] stack = snapshot.toArray(i);
+					for (int j = 0; j < stack.length; j++) {
+						putSlot(i * manifest.maxHeight + j, stack[j]);
+					}
+					buffer.putInt(HEADER_SIZE + i * 4, stack.length);
+				}
+			} else {
+				for (ManifestChange change : delta.getChanges()) {
+					int stack = change.getPosition().getStack();
+					int height = change.getPosition().getHeight();
+					if (change.getKind() != ManifestChange.Kind.UNLOAD) {
+						putSlot(stack * manifest.maxHeight + height, change.getContainer());
+					}
+					if (change.getKind() != ManifestChange.Kind.SETPOINT) {
+						buffer.putInt(HEADER_SIZE + stack * 4,
+								change.getKind() == ManifestChange.Kind.LOAD ? height + 1 : height);
+					}
+				}
+			}
+			buffer.putInt(CURRENT_WEIGHT, manifest.currentWeight);
+			buffer.putLong(VERSION, delta.getToVersion());
+		} catch (ManifestException e) {
+			throw new AssertionError(e); // all stacks are in range
+		} finally {
+			fence();
+			buffer.putLong(SEQUENCE, ++sequence);		// even: the file is consistent again
+		}
+		published = delta.getToVersion();
+		return published;
+	}
+
+	private static void checkKind(FreightContainer container) throws IOException {
+		if (ContainerRecords.kindOf(container) == 0) {
+			throw new IOException("Cannot share a container of type " + container.getType());
+		}
+	}
+
+	private void putSlot(int slot, FreightContainer container) {
+		int position = slotPosition(slots, slot);
+		buffer.putLong(position, container.getCode().toLong());
+		buffer.put(position + 8, ContainerRecords.kindOf(container));
+		buffer.put(position + 9, (byte) (int) container.getGrossWeight());
+		buffer.putInt(position + 12, ContainerRecords.extraOf(container));
+	}
+
+	/**
+	 * Keeps the accesses to the shared file before the call from being
+	 * reordered with those after it.  Java 7 has no explicit fences, but
+	 * HotSpot compiles a volatile write followed by a volatile read of the
+	 * same field to a full barrier, for the compiler and the processor.
+	 */
+	static void fence() {
+		fence = 0;
+		if (fence != 0) {
+			throw new AssertionError();
+		}
+	}
+
+	static int slotsOffset(int numStacks) {
+		return HEADER_SIZE + (numStacks * 4 + 7) / 8 * 8;
+	}
+
+	/**
+	 * Returns the position of a slot in the file, which fits in an int since
+	 * the file is smaller than 2 GB (see <code>create</code> and
+	 * <code>SharedManifestView.open</code>).
+	 */
+	static int slotPosition(int slotsOffset, long slot) {
+		return (int) (slotsOffset + slot * SLOT_SIZE);
+	}
+
+	static long fileSize(int numStacks, int maxHeight) {
+		return slotsOffset(numStacks) + (long) numStacks * maxHeight * SLOT_SIZE;
+	}
+}
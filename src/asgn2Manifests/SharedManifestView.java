@@ -0,0 +1,346 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import asgn2Codes.ContainerCode;
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.CargoException;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * A read-only view of a manifest published by a <code>SharedManifest</code>,
+ * possibly in another process.  The view reads the mapped file in place:
+ * each query reads the slots it needs and checks the file's sequence
+ * number before and after, reading again if the writer published in
+ * between, so each query sees one published version of the manifest
+ * without taking a lock.  Successive queries may see different versions;
+ * <code>getVersion</code> tells which.
+ * <p>
+ * A query waits while the writer is publishing.  If the writer stops in
+ * the middle of publishing, which leaves the file inconsistent, queries
+ * fail with an <code>IllegalStateException</code> after
+ * <code>MAX_WAIT_MILLIS</code>.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class SharedManifestView {
+
+	/** The longest time a query waits for the writer to finish publishing. */
+	public static final long MAX_WAIT_MILLIS = 5000;
+	// tries before a query starts yielding to the writer and watching the time
+	private static final int SPINS = 100;
+
+	private final MappedByteBuffer buffer;
+	private final int numStacks;
+	private final int maxHeight;
+	private final int maxWeight;
+	private final int slots;
+
+	private SharedManifestView(MappedByteBuffer buffer) {
+		this.buffer = buffer;
+		numStacks = buffer.getInt(8);
+		maxHeight = buffer.getInt(12);
+		maxWeight = buffer.getInt(16);
+		slots = SharedManifest.slotsOffset(numStacks);
+	}
+
+	/**
+	 * Opens a view of a shared manifest file.
+	 *
+	 * @param file the file written by a <code>SharedManifest</code>
+	 * @return the view
+	 * @throws IOException if the file cannot be read or is not a shared
+	 * manifest file
+	 */
+	public static SharedManifestView open(Path file) throws IOException {
+		MappedByteBuffer buffer;
+		long size;
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			size = channel.size();
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException("Not a shared manifest file: too large");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		buffer.order(ByteOrder.nativeOrder());
+		if (size < SharedManifest.HEADER_SIZE || buffer.getInt(0) != SharedManifest.MAGIC) {
+			throw new IOException("Not a shared manifest file");
+		}
+		if (buffer.getInt(4) != SharedManifest.FORMAT) {
+			throw new IOException("Unsupported shared manifest file format " + buffer.getInt(4));
+		}
+		int numStacks = buffer.getInt(8);
+		int maxHeight = buffer.getInt(12);
+		if (numStacks < 1 || maxHeight < 1 || size != SharedManifest.fileSize(numStacks, maxHeight)) {
+			throw new IOException("Corrupt shared manifest file: wrong size");
+		}
+		return new SharedManifestView(buffer);
+	}
+
+	/**
+	 * Returns the sequence number of a consistent state of the file, waiting
+	 * while the writer is publishing.
+	 */
+	private long begin(long started) {
+		for (int tries = 0;; tries++) {
+			long sequence = buffer.getLong(SharedManifest.SEQUENCE);
+			if ((sequence & 1) == 0) {
+				SharedManifest.fence();
+				return sequence;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Returns whether the file was not published to since
+	 * <code>begin</code> returned a sequence number.
+	 */
+	private boolean valid(long sequence) {
+		SharedManifest.fence();
+		return buffer.getLong(SharedManifest.SEQUENCE) == sequence;
+	}
+
+	private static void waited(int tries, long started) {
+		if (tries >= SPINS) {
+			if (System.nanoTime() - started > MAX_WAIT_MILLIS * 1000000L) {
+				throw new IllegalStateException("The shared manifest's writer stopped while publishing");
+			}
+			Thread.yield();
+		}
+	}
+
+	/**
+	 * Returns the number of stacks on the ship.
+	 *
+	 * @return the number of stacks
+	 */
+	public int getStackNumber() {
+		return numStacks;
+	}
+
+	/**
+	 * Returns the maximum allowable height of any stack.
+	 *
+	 * @return the maximum height
+	 */
+	public int getMaxHeight() {
+		return maxHeight;
+	}
+
+	/**
+	 * Returns the maximum weight of containers allowed on board.
+	 *
+	 * @return the weight limit in tonnes
+	 */
+	public int getMaxWeight() {
+		return maxWeight;
+	}
+
+	/**
+	 * Returns the version of the manifest last published.
+	 *
+	 * @return the version number
+	 */
+	public long getVersion() {
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			long sequence = begin(started);
+			long version = buffer.getLong(SharedManifest.VERSION);
+			if (valid(sequence)) {
+				return version;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Returns the current weight of the containers on board, as last
+	 * published.
+	 *
+	 * @return the weight in tonnes
+	 */
+	public int getCurrentWeight() {
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			long sequence = begin(started);
+			int weight = buffer.getInt(SharedManifest.CURRENT_WEIGHT);
+			if (valid(sequence)) {
+				return weight;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Returns the number of containers in a stack, as last published.
+	 *
+	 * @param stackNo the stack
+	 * @return the stack's height
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public int getHeight(int stackNo) throws ManifestException {
+		checkStack(stackNo);
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			long sequence = begin(started);
+			int height = buffer.getInt(SharedManifest.HEADER_SIZE + stackNo * 4);
+			if (valid(sequence)) {
+				return height;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Returns the contents of a stack as last published, starting with the
+	 * bottommost container at position zero in the array.
+	 *
+	 * @param stackNo the stack
+	 * @return the stack's freight containers as an array
+	 * @throws ManifestException if there is no such stack on the ship
+	 */
+	public FreightContainer[] toArray(int stackNo) throws ManifestException {
+		checkStack(stackNo);
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			long sequence = begin(started);
+			FreightContainer[] stack = readStack(stackNo);
+			if (stack != null && valid(sequence)) {
+				return stack;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Finds a container in the manifest as last published.  There is no
+	 * index in the shared file, so this reads the code of every container.
+	 *
+	 * @param queryContainer the code of the container
+	 * @return the container's position, or <code>null</code> if it is not on
+	 * board
+	 */
+	public ContainerPosition locate(ContainerCode queryContainer) {
+		long code = queryContainer.toLong();
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			long sequence = begin(started);
+			ContainerPosition found = null;
+			for (int i = 0; i < numStacks && found == null; i++) {
+				int height = Math.min(maxHeight, buffer.getInt(SharedManifest.HEADER_SIZE + i * 4));
+				for (int j = 0; j < height; j++) {
+					if (buffer.getLong(SharedManifest.slotPosition(slots, (long) i * maxHeight + j)) == code) {
+						found = new ContainerPosition(i, j);
+						break;
+					}
+				}
+			}
+			if (valid(sequence)) {
+				return found;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Writes the text of <code>CargoManifest.toString(ContainerCode)</code>
+	 * for a range of stacks of the manifest as last published.  All the
+	 * stacks are written from the same version.
+	 *
+	 * @param out where to write the text, e.g., a <code>Writer</code>
+	 * @param toFind the container to highlight, or <code>null</code>
+	 * @param fromStack the first stack to write
+	 * @param toStack one more than the last stack to write
+	 * @throws IOException if writing to the output fails
+	 * @throws ManifestException if the range of stacks is not on the ship
+	 */
+	public void render(Appendable out, ContainerCode toFind, int fromStack, int toStack)
+	throws IOException, ManifestException {
+		if (fromStack < 0 || toStack > numStacks || fromStack > toStack) {
+			throw new ManifestException("No such stack");
+		}
+		long find = toFind == null ? ContainerCode.INVALID : toFind.toLong();
+		long started = System.nanoTime();
+		for (int tries = 0;; tries++) {
+			// rendered aside, since what has been written to out cannot be taken back
+			StringBuilder text = new StringBuilder((toStack - fromStack) * 5);
+			long sequence = begin(started);
+			boolean read = true;
+			for (int i = fromStack; i < toStack && read; i++) {
+				FreightContainer[] stack = readStack(i);
+				if (stack == null) {
+					read = false;
+				} else {
+					CargoManifest.renderStack(text, stack, 0, stack.length, find);
+				}
+			}
+			if (read && valid(sequence)) {
+				out.append(text);
+				return;
+			}
+			waited(tries, started);
+		}
+	}
+
+	/**
+	 * Returns the same text as <code>CargoManifest.toString(ContainerCode)</code>
+	 * for the manifest as last published.
+	 *
+	 * @param toFind the container to highlight, or <code>null</code>
+	 * @return the text
+	 */
+	public String toString(ContainerCode toFind) {
+		StringBuilder toReturn = new StringBuilder(numStacks * 5);
+		try {
+			render(toReturn, toFind, 0, numStacks);
+		} catch (IOException e) {
+			throw new AssertionError(e); // a StringBuilder does not throw IOException
+		} catch (ManifestException e) {
+			throw new AssertionError(e); // all stacks are in range
+		}
+		return toReturn.toString();
+	}
+
+	@Override
+	public String toString() {
+		return toString(null);
+	}
+
+	private void checkStack(int stackNo) throws ManifestException {
+		if (stackNo < 0 || stackNo > numStacks - 1) {
+			throw new ManifestException("No such stack");
+		}
+	}
+
+	/**
+	 * Creates the containers of a stack from its slots.  The file may be
+	 * published to meanwhile, so what is read may be nonsense.
+	 *
+	 * @return the containers, or <code>null</code> if the slots are not
+	 * valid, which means the file was published to
+	 */
+	private FreightContainer[] readStack(int stackNo) {
+		int height = buffer.getInt(SharedManifest.HEADER_SIZE + stackNo * 4);
+		if (height < 0 || height > maxHeight) {
+			return null;
+		}
+		FreightContainer[] stack = new FreightContainer[height];
+		for (int i = 0; i < height; i++) {
+			int position = SharedManifest.slotPosition(slots, (long) stackNo * maxHeight + i);
+			try {
+				stack[i] = ContainerRecords.create(buffer.getLong(position), buffer.get(position + 8),
+						buffer.get(position + 9), buffer.getInt(position + 12));
+			} catch (CargoException e) {
+				return null;
+			}
+		}
+		return stack;
+	}
+}
@@ -0,0 +1,141 @@
+package asgn2Manifests;
+
+import java.util.List;
+
+import asgn2Containers.FreightContainer;
+
+/**
+ * The weight distribution of a manifest, set up by
+ * <code>CargoManifest.setStackCoordinates</code>: where each stack stands
+ * on deck, the limits on the ship's longitudinal (trim) and transverse
+ * (list) moments, and the current moments of the cargo.
+ * <p>
+ * Coordinates are whole centimetres from the reference point the limits
+ * are given for, e.g., midships on the centre line, and weights are whole
+ * tonnes, so the moments are kept exactly in tonne-centimetres.  Each load
+ * or unload adds or subtracts one weight times one coordinate per axis, and
+ * since integer sums do not drift the moments never need to be recomputed
+ * from the stacks.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+class ShipBalance {
+
+	private final int[] longitudinal;
+	private final int[] transverse;
+	private final long maxLongitudinalMoment;
+	private final long maxTransverseMoment;
+	long longitudinalMoment;
+	long transverseMoment;
+
+	/**
+	 * Constructs the weight distribution of the cargo already on board.
+	 *
+	 * @param longitudinal the longitudinal coordinate of each stack
+	 * @param transverse the transverse coordinate of each stack
+	 * @param maxLongitudinalMoment the largest longitudinal moment allowed
+	 * either way
+	 * @param maxTransverseMoment the largest transverse moment allowed either
+	 * way
+	 * @param stackWeights the weight of each stack
+	 */
+	ShipBalance(int[] longitudinal, int[] transverse, long maxLongitudinalMoment, long maxTransverseMoment,
+			int[] stackWeights) {
+		this.longitudinal = longitudinal;
+		this.transverse = transverse;
+		this.maxLongitudinalMoment = maxLongitudinalMoment;
+		this.maxTransverseMoment = maxTransverseMoment;
+		for (int i = 0; i < stackWeights.length; i++) {
+			add(i, stackWeights[i]);
+		}
+	}
+
+	/**
+	 * Constructs a copy of a weight distribution, e.g., to follow the moments
+	 * through a sequence of planned moves without changing the manifest's.
+	 *
+	 * @param other the weight distribution to copy
+	 */
+	ShipBalance(ShipBalance other) {
+		longitudinal = other.longitudinal;
+		transverse = other.transverse;
+		maxLongitudinalMoment = other.maxLongitudinalMoment;
+		maxTransverseMoment = other.maxTransverseMoment;
+		longitudinalMoment = other.longitudinalMoment;
+		transverseMoment = other.transverseMoment;
+	}
+
+	/**
+	 * Returns whether the moments are within their limits.
+	 *
+	 * @return true if the ship is balanced
+	 */
+	boolean isBalanced() {
+		return within(longitudinalMoment, transverseMoment);
+	}
+
+	/**
+	 * Returns whether putting a weight on a stack keeps the moments within
+	 * their limits.
+	 *
+	 * @param stackNumber the stack
+	 * @param weight the weight (in tonnes)
+	 * @return true if the load is allowed
+	 */
+	boolean allows(int stackNumber, int weight) {
+		return within(longitudinalMoment + (long) weight * longitudinal[stackNumber],
+				transverseMoment + (long) weight * transverse[stackNumber]);
+	}
+
+	/**
+	 * Returns whether moving a weight from one stack to another keeps the
+	 * moments within their limits.
+	 *
+	 * @param from the stack it is taken from
+	 * @param to the stack it is put on
+	 * @param weight the weight (in tonnes)
+	 * @return true if the move is allowed
+	 */
+	boolean allowsMove(int from, int to, int weight) {
+		return within(longitudinalMoment + (long) weight * (longitudinal[to] - (long) longitudinal[from]),
+				transverseMoment + (long) weight * (transverse[to] - (long) transverse[from]));
+	}
+
+	/**
+	 * Returns the first of a sequence of loads which would take the moments
+	 * beyond their limits, if the loads were made in order.
+	 *
+	 * @param containers the containers to load
+	 * @param stacks the stack each container is to be put on
+	 * @return the index of the first load not allowed, or -1 if all are
+	 */
+	int firstRejected(List<FreightContainer> containers, int[] stacks) {
+		long longitudinalSum = longitudinalMoment;
+		long transverseSum = transverseMoment;
+		for (int i = 0; i < stacks.length; i++) {
+			int weight = containers.get(i).getGrossWeight();
+			longitudinalSum += (long) weight * longitudinal[stacks[i]];
+			transverseSum += (long) weight * transverse[stacks[i]];
+			if (!within(longitudinalSum, transverseSum)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Adds a weight put on a stack to the moments.
+	 *
+	 * @param stackNumber the stack
+	 * @param weight the weight (in tonnes), negative for a weight taken off
+	 */
+	void add(int stackNumber, int weight) {
+		longitudinalMoment += (long) weight * longitudinal[stackNumber];
+		transverseMoment += (long) weight * transverse[stackNumber];
+	}
+
+	private boolean within(long longitudinalSum, long transverseSum) {
+		return Math.abs(longitudinalSum) <= maxLongitudinalMoment && Math.abs(transverseSum) <= maxTransverseMoment;
+	}
+}
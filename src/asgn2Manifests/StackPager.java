@@ -0,0 +1,77 @@
+package asgn2Manifests;
+
+import java.nio.ByteBuffer;
+
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.CargoException;
+
+/**
+ * Reads the stacks of a manifest file opened by <code>ManifestFile.open</code>
+ * on demand, creating the containers of a stack from its records the first
+ * time the stack is needed.  The pager only reads the mapped file, so it
+ * may be shared by a manifest and its snapshots on any number of threads.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+class StackPager {
+
+	private final ByteBuffer file;
+	private final int records;
+
+	/**
+	 * Constructs a pager for a mapped manifest file whose header and stack
+	 * headers have been checked.
+	 *
+	 * @param file the mapped file, which must not change
+	 * @param numStacks the number of stacks in the file
+	 */
+	StackPager(ByteBuffer file, int numStacks) {
+		this.file = file;
+		records = ManifestFile.HEADER_SIZE + numStacks * ManifestFile.STACK_HEADER_SIZE;
+	}
+
+	/**
+	 * Returns the number of containers saved in a stack.
+	 *
+	 * @param stackNumber the stack
+	 * @return the stack's height
+	 */
+	int height(int stackNumber) {
+		return file.getInt(ManifestFile.HEADER_SIZE + stackNumber * ManifestFile.STACK_HEADER_SIZE + 4);
+	}
+
+	/**
+	 * Creates the container saved at a height in a stack.
+	 *
+	 * @param stackNumber the stack
+	 * @param height the height, which must be less than the stack's height
+	 * @return the container
+	 * @throws IllegalStateException if the record is corrupt
+	 */
+	FreightContainer container(int stackNumber, int height) {
+		int first = file.getInt(ManifestFile.HEADER_SIZE + stackNumber * ManifestFile.STACK_HEADER_SIZE);
+		int position = records + (first + height) * ManifestFile.RECORD_SIZE;
+		try {
+			return ContainerRecords.create(file.getLong(position), file.get(position + 8), file.get(position + 9),
+					file.getInt(position + 12));
+		} catch (CargoException e) {
+			throw new IllegalStateException("Corrupt manifest file: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Creates the containers saved in a stack, bottom first.
+	 *
+	 * @param stackNumber the stack
+	 * @param into the array to put the containers in
+	 * @param offset where in the array to put the bottom container
+	 * @throws IllegalStateException if a record is corrupt
+	 */
+	void read(int stackNumber, FreightContainer[] into, int offset) {
+		int height = height(stackNumber);
+		for (int i = 0; i < height; i++) {
+			into[offset + i] = container(stackNumber, i);
+		}
+	}
+}
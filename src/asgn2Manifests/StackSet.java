@@ -0,0 +1,147 @@
+package asgn2Manifests;
+
+/**
+ * A set of stack numbers from 0 to a fixed capacity, used by the manifest
+ * to find the lowest numbered stack with some property.  The set is a
+ * tree of bit sets: level 0 has one bit per stack, and each level above
+ * has one bit per non-empty 64-bit word of the level below.  Adding,
+ * removing and finding the lowest stack from a given number on all take
+ * time in the number of levels, i.e., log<sub>64</sub> of the capacity,
+ * and no objects are created.
+ * 
+ * @author CAB302
+ * @version 1.0
+ */
+class StackSet {
+	
+	// levels[0] has a bit per stack, levels[k + 1] a bit per non-empty word of levels[k]
+	private final long[][] levels;
+	private final int capacity;
+	
+	/**
+	 * Constructs a set of stack numbers.
+	 * 
+	 * @param capacity the number of stacks, so the set holds numbers from 0 to capacity - 1
+	 * @param full true to start with every stack in the set, false to start empty
+	 */
+	StackSet(int capacity, boolean full) {
+		this.capacity = capacity;
+		int count = 1;
+		for (int bits = capacity; bits > 64; bits = (bits + 63) >>> 6) {
+			count++;
+		}
+		levels = new long[count][];
+		int bits = capacity;
+		for (int level = 0; level < count; level++) {
+			int words = Math.max(1, (bits + 63) >>> 6);
+			levels[level] = new long[words];
+			if (full && bits > 0) {
+				for (int w = 0; w < words; w++) {
+					levels[level][w] = -1L;
+				}
+				if ((bits & 63) != 0) {
+					levels[level][words - 1] = -1L >>> (64 - (bits & 63)); // only the bits in range
+				}
+			}
+			bits = words;
+		}
+	}
+	
+	/**
+	 * Adds a stack to the set.
+	 * 
+	 * @param stack the stack number
+	 */
+	void add(int stack) {
+		int index = stack;
+		for (int level = 0; level < levels.length; level++) {
+			long[] words = levels[level];
+			long word = words[index >>> 6];
+			words[index >>> 6] = word | (1L << index);
+			if (word != 0) {
+				return; // the levels above already know this word is not empty
+			}
+			index >>>= 6;
+		}
+	}
+	
+	/**
+	 * Removes a stack from the set.
+	 * 
+	 * @param stack the stack number
+	 */
+	void remove(int stack) {
+		int index = stack;
+		for (int level = 0; level < levels.length; level++) {
+			long[] words = levels[level];
+			long word = words[index >>> 6] & ~(1L << index);
+			words[index >>> 6] = word;
+			if (word != 0) {
+				return;
+			}
+			index >>>= 6;
+		}
+	}
+	
+	/**
+	 * Returns whether a stack is in the set.
+	 * 
+	 * @param stack the stack number
+	 * @return true if the stack is in the set
+	 */
+	boolean contains(int stack) {
+		return (levels[0][stack >>> 6] & (1L << stack)) != 0;
+	}
+	
+	/**
+	 * Returns the lowest stack in the set.
+	 * 
+	 * @return the stack number, or -1 if the set is empty
+	 */
+	int first() {
+		return next(0);
+	}
+	
+	/**
+	 * Returns the lowest stack in the set which is numbered
+	 * <code>from</code> or higher.
+	 * 
+	 * @param from the lowest stack number of interest
+	 * @return the stack number, or -1 if there is no such stack in the set
+	 */
+	int next(int from) {
+		if (from < 0) {
+			from = 0;
+		}
+		return from >= capacity ? -1 : next(0, from);
+	}
+	
+	private int next(int level, int from) {
+		long[] words = levels[level];
+		int w = from >>> 6;
+		if (w >= words.length) {
+			return -1;
+		}
+		long word = words[w] & (-1L << from);
+		if (word == 0) {
+			if (level == levels.length - 1) {
+				return -1;
+			}
+			w = next(level + 1, w + 1); // the next non-empty word
+			if (w < 0) {
+				return -1;
+			}
+			word = words[w];
+		}
+		return (w << 6) + Long.numberOfTrailingZeros(word);
+	}
+	
+	/**
+	 * Returns whether the set is empty.
+	 * 
+	 * @return true if no stack is in the set
+	 */
+	boolean isEmpty() {
+		return levels[levels.length - 1][0] == 0;
+	}
+}
@@ -0,0 +1,355 @@
+package asgn2Manifests;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * Chooses the stacks for a batch of containers bound for different ports of
+ * the ship's rotation, so that as few containers as possible end up above
+ * a container to be discharged at an earlier port, each of which would
+ * have to be restowed.  <code>loadContainer</code> only knows the
+ * nearest-to-the-bridge rule and buries early containers under late ones.
+ * <p>
+ * The containers are loaded in the batch's order, as the yard delivers
+ * them; only their stacks are chosen.  (If the order were free, loading
+ * the batch latest port first would avoid every restow.)  The captain's
+ * rules still hold: the weight limit, the stack height, unique codes and
+ * homogeneous stacks; the rule of loading close to the bridge gives way to
+ * the port rotation and is only used to break ties.  Containers already on
+ * board are assumed to stay on board beyond the rotation.  The ship's
+ * balance is not considered; <code>StowagePlan.apply</code> rejects a plan
+ * which would take it beyond its limits.
+ * <p>
+ * The search builds randomized greedy plans in parallel on a fork-join
+ * pool until the time budget is used up, and keeps the best.  A greedy
+ * plan puts each container on the stack of its type whose earliest port
+ * is the earliest not before the container's own (best fit), opening an
+ * empty stack instead when that would waste a stack kept for much later
+ * ports; how much waste is accepted varies from plan to plan.  The first
+ * plan is plain best fit and the first-fit plan is always a candidate, so
+ * the result is never worse than <code>loadContainer</code>.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class StowageOptimizer {
+
+	private final int parallelism;
+	private final long timeBudgetMillis;
+
+	/**
+	 * Constructs an optimizer.
+	 *
+	 * @param parallelism the number of threads searching, usually the number
+	 * of processors
+	 * @param timeBudgetMillis how long to search for
+	 * @throws IllegalArgumentException if there is not at least one thread or
+	 * the time budget is negative
+	 */
+	public StowageOptimizer(int parallelism, long timeBudgetMillis) {
+		if (parallelism < 1 || timeBudgetMillis < 0) {
+			throw new IllegalArgumentException("Invalid search settings");
+		}
+		this.parallelism = parallelism;
+		this.timeBudgetMillis = timeBudgetMillis;
+	}
+
+	/**
+	 * Plans the loading of a batch of containers.  The manifest is not
+	 * changed; the plan is carried out by <code>StowagePlan.apply</code>.
+	 *
+	 * @param manifest the manifest of the ship
+	 * @param containers the containers, in the order they are to be loaded
+	 * @param ports the position in the port rotation of each container's
+	 * discharge port, lower for earlier ports
+	 * @return the plan
+	 * @throws ManifestException if loading the batch would exceed the ship's
+	 * weight limit; if a container with the same code is already on board or
+	 * appears twice in the batch; if there are too many container types; or
+	 * if no suitable space can be found for one of the containers
+	 * @throws IllegalArgumentException if there is not one port per container
+	 */
+	public StowagePlan plan(CargoManifest manifest, List<FreightContainer> containers, int[] ports)
+	throws ManifestException {
+		if (ports.length != containers.size()) {
+			throw new IllegalArgumentException("A discharge port is needed for every container");
+		}
+		final Problem problem = new Problem(manifest, new ArrayList<FreightContainer>(containers), ports);
+		final Candidate firstFit = problem.build(null, true);
+		if (firstFit == null) {
+			throw new ManifestException(ManifestResult.NO_SPACE.getMessage());
+		}
+
+		final long deadline = System.nanoTime() + timeBudgetMillis * 1000000L;
+		ForkJoinPool pool = new ForkJoinPool(parallelism);
+		Candidate best;
+		try {
+			best = pool.invoke(new Search(problem, deadline, 0, parallelism));
+		} finally {
+			pool.shutdown();
+		}
+		int candidates = best.candidates + 1;
+		if (!best.betterThan(firstFit)) {
+			best = firstFit;
+		}
+		return new StowagePlan(manifest, problem.containers, best.stacks, manifest.version, best.restows,
+				firstFit.restows, best.bridgeDistance, firstFit.bridgeDistance, candidates);
+	}
+
+	/**
+	 * Searches with a range of threads, splitting the range until each task
+	 * has one thread.
+	 */
+	@SuppressWarnings("serial")
+	private static class Search extends RecursiveTask<Candidate> {
+
+		private final Problem problem;
+		private final long deadline;
+		private final int from;
+		private final int to;
+
+		Search(Problem problem, long deadline, int from, int to) {
+			this.problem = problem;
+			this.deadline = deadline;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected Candidate compute() {
+			if (to - from > 1) {
+				int middle = (from + to) >>> 1;
+				Search right = new Search(problem, deadline, middle, to);
+				right.fork();
+				Candidate left = new Search(problem, deadline, from, middle).compute();
+				return better(left, right.join());
+			}
+			// the first thread starts with plain best fit
+			Random random = new Random(from);
+			Candidate best = null;
+			int candidates = 0;
+			do {
+				Candidate candidate = problem.build(candidates == 0 && from == 0 ? null : random, false);
+				candidates++;
+				if (candidate != null && (best == null || candidate.betterThan(best))) {
+					best = candidate;
+				}
+			} while (System.nanoTime() < deadline);
+			if (best == null) {
+				best = new Candidate(null, Integer.MAX_VALUE, Long.MAX_VALUE);
+			}
+			best.candidates = candidates;
+			return best;
+		}
+
+		private static Candidate better(Candidate left, Candidate right) {
+			Candidate better = right.betterThan(left) ? right : left;
+			better.candidates = left.candidates + right.candidates;
+			return better;
+		}
+	}
+
+	/**
+	 * A complete plan and its cost.
+	 */
+	private static class Candidate {
+
+		final int[] stacks;
+		final int restows;
+		final long bridgeDistance;
+		int candidates;
+
+		Candidate(int[] stacks, int restows, long bridgeDistance) {
+			this.stacks = stacks;
+			this.restows = restows;
+			this.bridgeDistance = bridgeDistance;
+		}
+
+		boolean betterThan(Candidate other) {
+			return restows < other.restows || (restows == other.restows && bridgeDistance < other.bridgeDistance);
+		}
+	}
+
+	/**
+	 * The batch and the state of the ship, checked and numbered once and
+	 * shared read-only by the searching threads.
+	 */
+	private static class Problem {
+
+		final List<FreightContainer> containers;
+		private final int numStacks;
+		private final int maxHeight;
+		private final int[] heights;
+		private final int[] stackTypes;
+		private final int typeCount;
+		private final int[] types;
+		// discharge ports numbered 0 to portCount - 1 in rotation order; portCount stands for staying on board
+		private final int[] ranks;
+		private final int portCount;
+
+		Problem(CargoManifest manifest, List<FreightContainer> containers, int[] ports) throws ManifestException {
+			this.containers = containers;
+			numStacks = manifest.numStacks;
+			maxHeight = manifest.maxHeight;
+			heights = manifest.heights.clone();
+			stackTypes = new int[numStacks];
+			for (int i = 0; i < numStacks; i++) {
+				stackTypes[i] = manifest.stackTypes[i];
+			}
+
+			long weight = manifest.currentWeight;
+			LongIntHashMap batchCodes = new LongIntHashMap(containers.size());
+			List<String> typeNames = new ArrayList<String>(manifest.typeNames);
+			types = new int[containers.size()];
+			for (int i = 0; i < containers.size(); i++) {
+				FreightContainer container = containers.get(i);
+				weight += container.getGrossWeight();
+				long code = container.getCode().toLong();
+				if (manifest.codes.containsKey(code) || batchCodes.containsKey(code)) {
+					throw new ManifestException(ManifestResult.DUPLICATE_CODE.getMessage());
+				}
+				batchCodes.put(code, i);
+				int type = typeNames.indexOf(container.getType());
+				if (type < 1) {
+					if (typeNames.size() > Byte.MAX_VALUE) {
+						throw new ManifestException(ManifestResult.TOO_MANY_TYPES.getMessage());
+					}
+					typeNames.add(container.getType());
+					type = typeNames.size() - 1;
+				}
+				types[i] = type;
+			}
+			if (weight > manifest.maxWeight) {
+				throw new ManifestException(ManifestResult.WEIGHT_LIMIT.getMessage());
+			}
+			typeCount = typeNames.size();
+
+			int[] distinct = ports.clone();
+			Arrays.sort(distinct);
+			int count = 0;
+			for (int i = 0; i < distinct.length; i++) {
+				if (i == 0 || distinct[i] != distinct[i - 1]) {
+					distinct[count++] = distinct[i];
+				}
+			}
+			portCount = count;
+			ranks = new int[ports.length];
+			for (int i = 0; i < ports.length; i++) {
+				ranks[i] = Arrays.binarySearch(distinct, 0, count, ports[i]);
+			}
+		}
+
+		/**
+		 * Builds a plan greedily.
+		 *
+		 * @param random the source of the plan's variations, or null for
+		 * plain best fit
+		 * @param firstFit true to load as <code>loadContainer</code> does
+		 * instead
+		 * @return the plan, or null if it runs out of room
+		 */
+		Candidate build(Random random, boolean firstFit) {
+			// how much later than a container's port a stack's earliest port may be before an empty stack is
+			// preferred, the chance of opening an empty stack anyway, and whether to overstow the stack with the
+			// earliest port or the latest one before the container's
+			int slack = random == null ? portCount : random.nextInt(portCount + 1);
+			double open = random == null ? 0 : random.nextDouble() * 0.1;
+			boolean earliest = random == null || random.nextBoolean();
+
+			int[] heights = this.heights.clone();
+			int[] stackTypes = this.stackTypes.clone();
+			// the earliest port of each stack, portCount if none of the batch is in it
+			int[] earliestPort = new int[numStacks];
+			// the stacks with room of each type, by their earliest port
+			StackSet[][] room = new StackSet[typeCount][portCount + 1];
+			StackSet empty = new StackSet(numStacks, false);
+			for (int i = 0; i < numStacks; i++) {
+				earliestPort[i] = portCount;
+				if (heights[i] == 0) {
+					empty.add(i);
+				} else if (heights[i] < maxHeight) {
+					roomFor(room, stackTypes[i], portCount).add(i);
+				}
+			}
+
+			int[] stacks = new int[types.length];
+			int restows = 0;
+			long bridgeDistance = 0;
+			for (int i = 0; i < types.length; i++) {
+				int type = types[i];
+				int rank = ranks[i];
+				int stack = -1;
+				int from = -1;		// the earliest port of the chosen stack, -1 if it is empty
+				if (firstFit) {
+					for (int port = 0; port <= portCount; port++) {
+						int candidate = room[type][port] == null ? -1 : room[type][port].first();
+						if (candidate >= 0 && (stack < 0 || candidate < stack)) {
+							stack = candidate;
+							from = port;
+						}
+					}
+					int emptyStack = empty.first();
+					if (emptyStack >= 0 && (stack < 0 || emptyStack < stack)) {
+						stack = emptyStack;
+						from = -1;
+					}
+				} else {
+					for (int port = rank; port <= portCount && stack < 0; port++) {
+						if (room[type][port] != null && room[type][port].first() >= 0) {
+							stack = room[type][port].first();
+							from = port;
+						}
+					}
+					int emptyStack = empty.first();
+					if (emptyStack >= 0 && (stack < 0 || from - rank > slack
+							|| (random != null && random.nextDouble() < open))) {
+						stack = emptyStack;
+						from = -1;
+					}
+					for (int port = 0; port < rank && stack < 0; port++) {
+						int overstow = earliest ? port : rank - 1 - port;
+						if (room[type][overstow] != null && room[type][overstow].first() >= 0) {
+							stack = room[type][overstow].first();
+							from = overstow;
+						}
+					}
+				}
+				if (stack < 0) {
+					return null;
+				}
+
+				if (from < 0) {
+					empty.remove(stack);
+					stackTypes[stack] = type;
+					from = portCount;
+				} else {
+					room[type][from].remove(stack);
+				}
+				if (rank > from) {
+					restows++;		// this container is above one for an earlier port
+				}
+				earliestPort[stack] = Math.min(from, rank);
+				if (++heights[stack] < maxHeight) {
+					roomFor(room, type, earliestPort[stack]).add(stack);
+				}
+				stacks[i] = stack;
+				bridgeDistance += stack;
+			}
+			return new Candidate(stacks, restows, bridgeDistance);
+		}
+
+		private StackSet roomFor(StackSet[][] room, int type, int port) {
+			if (room[type][port] == null) {
+				room[type][port] = new StackSet(numStacks, false);
+			}
+			return room[type][port];
+		}
+	}
+}
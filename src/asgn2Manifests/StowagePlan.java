@@ -0,0 +1,210 @@
+package asgn2Manifests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import asgn2Containers.FreightContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * A plan made by <code>StowageOptimizer</code>: the stack each container of
+ * a batch is to be loaded on, in the batch's order, with the number of
+ * restows the plan will cause along the port rotation and the number
+ * first-fit loading would cause instead.  A plan can only be applied to
+ * the manifest it was made for, before that manifest changes.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class StowagePlan {
+
+	private final CargoManifest manifest;
+	private final List<FreightContainer> containers;
+	private final int[] stacks;
+	private final long version;
+	private final int restows;
+	private final int firstFitRestows;
+	private final long bridgeDistance;
+	private final long firstFitBridgeDistance;
+	private final int candidates;
+
+	StowagePlan(CargoManifest manifest, List<FreightContainer> containers, int[] stacks, long version, int restows,
+			int firstFitRestows, long bridgeDistance, long firstFitBridgeDistance, int candidates) {
+		this.manifest = manifest;
+		this.containers = containers;
+		this.stacks = stacks;
+		this.version = version;
+		this.restows = restows;
+		this.firstFitRestows = firstFitRestows;
+		this.bridgeDistance = bridgeDistance;
+		this.firstFitBridgeDistance = firstFitBridgeDistance;
+		this.candidates = candidates;
+	}
+
+	/**
+	 * Returns the number of containers in the batch.
+	 *
+	 * @return the number of containers
+	 */
+	public int size() {
+		return stacks.length;
+	}
+
+	/**
+	 * Returns the stack a container of the batch is to be loaded on.
+	 *
+	 * @param index the index of the container in the batch
+	 * @return the stack number
+	 */
+	public int getStack(int index) {
+		return stacks[index];
+	}
+
+	/**
+	 * Returns the number of containers of the batch which the plan puts
+	 * above a container to be discharged at an earlier port, each of which
+	 * will have to be restowed.
+	 *
+	 * @return the number of restows
+	 */
+	public int getRestows() {
+		return restows;
+	}
+
+	/**
+	 * Returns the number of restows loading the batch with
+	 * <code>loadContainer</code>, i.e., first fit, would cause.
+	 *
+	 * @return the number of restows
+	 */
+	public int getFirstFitRestows() {
+		return firstFitRestows;
+	}
+
+	/**
+	 * Returns the sum of the stack numbers the containers are loaded on,
+	 * which first fit keeps as low as possible.
+	 *
+	 * @return the total distance from the bridge, in stacks
+	 */
+	public long getBridgeDistance() {
+		return bridgeDistance;
+	}
+
+	/**
+	 * Returns the sum of the stack numbers first fit would load the
+	 * containers on.
+	 *
+	 * @return the total distance from the bridge, in stacks
+	 */
+	public long getFirstFitBridgeDistance() {
+		return firstFitBridgeDistance;
+	}
+
+	/**
+	 * Returns the number of candidate plans the optimizer compared.
+	 *
+	 * @return the number of plans
+	 */
+	public int getCandidates() {
+		return candidates;
+	}
+
+	/**
+	 * Loads the batch onto the ship as planned, in the batch's order.  Every
+	 * load is checked against the manifest before the first container is
+	 * placed, so if any of them is rejected nothing is loaded.
+	 *
+	 * @param manifest the manifest the plan was made for
+	 * @return the position each container was loaded at, in the batch's order
+	 * @throws ManifestException if the plan was made for another manifest;
+	 * if the manifest has changed since the plan was made; or if one of the
+	 * loads would break the loading rules or put the ship out of balance
+	 */
+	public List<ContainerPosition> apply(CargoManifest manifest) throws ManifestException {
+		if (manifest != this.manifest) {
+			throw new ManifestException("The plan was made for another manifest");
+		}
+		if (manifest.version != version) {
+			throw new ManifestException("The manifest has changed since the plan was made");
+		}
+		check(manifest);
+		if (manifest.balance != null && manifest.balance.firstRejected(containers, stacks) >= 0) {
+			throw new ManifestException(ManifestResult.OUT_OF_BALANCE.getMessage());
+		}
+		byte[] types = new byte[stacks.length];
+		for (int i = 0; i < stacks.length; i++) {
+			types[i] = manifest.typeOf(containers.get(i).getType());		// cannot fail, the types were counted
+		}
+		List<ContainerPosition> positions = new ArrayList<ContainerPosition>(stacks.length);
+		for (int i = 0; i < stacks.length; i++) {
+			FreightContainer container = containers.get(i);
+			int slot = manifest.place(container, types[i], stacks[i]);
+			manifest.codes.put(container.getCode().toLong(), slot);
+			positions.add(new ContainerPosition(stacks[i], slot % manifest.maxHeight));
+		}
+		return positions;
+	}
+
+	/**
+	 * Checks the plan's loads against the manifest as it is now, as
+	 * <code>loadContainer</code> would check them: the weight limit, the
+	 * codes, the number of container types, and that each stack exists, has
+	 * room and holds only containers of the same type.
+	 *
+	 * @param manifest the manifest
+	 * @throws ManifestException if one of the loads is not allowed
+	 */
+	private void check(CargoManifest manifest) throws ManifestException {
+		long weight = manifest.currentWeight;
+		LongIntHashMap batchCodes = new LongIntHashMap(stacks.length);
+		List<String> newTypes = new ArrayList<String>();
+		// the number of containers the plan puts on each stack, and the type of each empty stack it opens
+		Map<Integer, Integer> added = new HashMap<Integer, Integer>();
+		Map<Integer, String> opened = new HashMap<Integer, String>();
+		for (int i = 0; i < stacks.length; i++) {
+			FreightContainer container = containers.get(i);
+			weight += container.getGrossWeight();
+			long code = container.getCode().toLong();
+			if (manifest.codes.containsKey(code) || batchCodes.containsKey(code)) {
+				throw new ManifestException(ManifestResult.DUPLICATE_CODE.getMessage());
+			}
+			batchCodes.put(code, i);
+			String type = container.getType();
+			if (manifest.typeNames.indexOf(type) < 1 && !newTypes.contains(type)) {
+				newTypes.add(type);
+			}
+
+			int stack = stacks[i];
+			if (stack < 0 || stack >= manifest.numStacks) {
+				throw new ManifestException(ManifestResult.NO_SPACE.getMessage());
+			}
+			int height = manifest.heights[stack];
+			Integer count = added.get(stack);
+			count = count == null ? 1 : count + 1;
+			String stackType = height > 0 ? manifest.typeNames.get(manifest.stackTypes[stack]) : opened.get(stack);
+			if (height + count > manifest.maxHeight || (stackType != null && !stackType.equals(type))) {
+				throw new ManifestException(ManifestResult.NO_SPACE.getMessage());
+			}
+			added.put(stack, count);
+			if (height == 0) {
+				opened.put(stack, type);
+			}
+		}
+		if (weight > manifest.maxWeight) {
+			throw new ManifestException(ManifestResult.WEIGHT_LIMIT.getMessage());
+		}
+		if (manifest.typeNames.size() + newTypes.size() > Byte.MAX_VALUE + 1) {
+			throw new ManifestException(ManifestResult.TOO_MANY_TYPES.getMessage());
+		}
+	}
+
+	@Override
+	public String toString() {
+		return stacks.length + " containers, " + restows + " restows (first fit: " + firstFitRestows
+				+ "), bridge distance " + bridgeDistance + " (first fit: " + firstFitBridgeDistance + "), "
+				+ candidates + " candidate plans";
+	}
+}
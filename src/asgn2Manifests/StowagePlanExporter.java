@@ -0,0 +1,196 @@
+package asgn2Manifests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.FreightContainer;
+import asgn2Containers.RefrigeratedContainer;
+import asgn2Exceptions.ManifestException;
+
+/**
+ * Exports the stowage plan of a ship as a BAPLIE-style EDIFACT message.
+ * Each container is described by a group of segments starting with its
+ * stowage location:
+ * <pre>
+ * LOC+147+SSSSSTT::5'      stowage cell: stack (5 digits), tier (2 digits, from 01 to 99)
+ * MEA+WT++KGM:30000'       gross weight in kilograms
+ * TMP+2+-18:CEL'           reefer setpoint, refrigerated containers only
+ * DGS+IMD+2'               goods category, dangerous goods containers only
+ * EQD+CN+MSCU6639871+GP'   code and type group: GP general purpose, RE refrigerated
+ * </pre>
+ * The groups follow the interchange and message headers (<code>UNB</code>,
+ * <code>UNH</code>, <code>BGM</code>, <code>DTM</code>) in stack order,
+ * bottom first, and are followed by the trailers (<code>UNT</code>,
+ * <code>UNZ</code>).  Each segment is on a line of its own.
+ * <p>
+ * The manifest is read in place, stack by stack, and the message is
+ * encoded into one fixed-size buffer which is written to the channel
+ * whenever it fills up, so the memory used does not depend on the number
+ * of containers.
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class StowagePlanExporter {
+
+	static final int BUFFER_SIZE = 1 << 16;
+	// room for the longest segment, so a segment is never split across a flush
+	private static final int MAX_SEGMENT = 256;
+	// the widths of the stack and tier in a stowage cell
+	private static final int STACK_DIGITS = 5;
+	private static final int TIER_DIGITS = 2;
+	private static final int MAX_STACKS = 100000;
+	private static final int MAX_TIERS = 99;
+
+	private final WritableByteChannel out;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+	private int segments;
+
+	private StowagePlanExporter(WritableByteChannel out) {
+		this.out = out;
+	}
+
+	/**
+	 * Writes the stowage plan of a ship to a channel.  The channel is not
+	 * closed.
+	 *
+	 * @param manifest the manifest of the ship
+	 * @param reference the reference of the message, also used as the
+	 * interchange reference
+	 * @param prepared the time the message is prepared
+	 * @param out the channel to write to
+	 * @return the number of containers exported
+	 * @throws IOException if the channel cannot be written
+	 * @throws ManifestException if a container is in a stack numbered
+	 * 100000 or more, or in a tier above 99, whose stowage cell cannot be
+	 * written; nothing is written then
+	 */
+	public static int export(CargoManifest manifest, String reference, Date prepared, WritableByteChannel out)
+	throws IOException, ManifestException {
+		for (int stack = 0; stack < manifest.numStacks; stack++) {
+			if (manifest.heights[stack] > 0 && (stack >= MAX_STACKS || manifest.heights[stack] > MAX_TIERS)) {
+				throw new ManifestException("Stack " + stack + " does not fit in a stowage cell");
+			}
+		}
+		return new StowagePlanExporter(out).write(manifest, reference, prepared);
+	}
+
+	private int write(CargoManifest manifest, String reference, Date prepared) throws IOException {
+		SimpleDateFormat format = new SimpleDateFormat("yyMMdd:HHmm");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		String interchangeTime = format.format(prepared);
+		format.applyPattern("yyyyMMddHHmm");
+
+		text("UNB+UNOA:2+CAB302+CARRIER+").text(interchangeTime).text("+").escaped(reference).end(false);
+		text("UNH+").escaped(reference).text("+BAPLIE:D:95B:UN:SMDG20").end(true);
+		text("BGM++").escaped(reference).text("+9").end(true);
+		text("DTM+137:").text(format.format(prepared)).text(":203").end(true);
+
+		int containers = 0;
+		for (int stack = 0; stack < manifest.numStacks; stack++) {
+			manifest.pageIn(stack);
+			int bottom = stack * manifest.maxHeight;
+			for (int tier = 0; tier < manifest.heights[stack]; tier++) {
+				container(manifest.slots[bottom + tier], stack, tier);
+				containers++;
+			}
+		}
+
+		text("UNT+").number(segments + 1).text("+").escaped(reference).end(true);
+		text("UNZ+1+").escaped(reference).end(false);
+		flush();
+		return containers;
+	}
+
+	private void container(FreightContainer container, int stack, int tier) throws IOException {
+		text("LOC+147+").digits(stack, STACK_DIGITS).digits(tier + 1, TIER_DIGITS).text("::5").end(true);
+		text("MEA+WT++KGM:").number(container.getGrossWeight() * 1000).end(true);
+		if (container instanceof RefrigeratedContainer) {
+			text("TMP+2+").number(((RefrigeratedContainer) container).getTemperature()).text(":CEL").end(true);
+		} else if (container instanceof DangerousGoodsContainer) {
+			text("DGS+IMD+").number(((DangerousGoodsContainer) container).getCategory()).end(true);
+		}
+		text("EQD+CN+").text(container.getCode().toString())
+				.text(container instanceof RefrigeratedContainer ? "+RE" : "+GP").end(true);
+	}
+
+	private StowagePlanExporter text(String text) throws IOException {
+		if (buffer.remaining() < MAX_SEGMENT) {
+			flush();
+		}
+		for (int i = 0; i < text.length(); i++) {
+			buffer.put((byte) text.charAt(i));
+		}
+		return this;
+	}
+
+	/**
+	 * Adds free text, escaping the EDIFACT separators with the release
+	 * character and replacing characters outside the UNOA set.
+	 */
+	private StowagePlanExporter escaped(String text) throws IOException {
+		if (buffer.remaining() < MAX_SEGMENT + 2 * text.length()) {
+			flush();
+		}
+		for (int i = 0; i < text.length(); i++) {
+			char c = text.charAt(i);
+			if (c == '+' || c == ':' || c == '\'' || c == '?') {
+				buffer.put((byte) '?');
+			}
+			buffer.put(c >= ' ' && c < 127 ? (byte) c : (byte) '?');
+		}
+		return this;
+	}
+
+	private StowagePlanExporter number(int value) {
+		if (value < 0) {
+			buffer.put((byte) '-');
+			value = -value;
+		}
+		return digits(value, 1);
+	}
+
+	/**
+	 * Adds a number which is not negative, padded with zeros to at least
+	 * the given width.
+	 */
+	private StowagePlanExporter digits(int value, int width) {
+		int digits = 1;
+		for (int rest = value / 10; rest > 0; rest /= 10) {
+			digits++;
+		}
+		int end = buffer.position() + Math.max(width, digits);
+		for (int i = end - 1; i >= buffer.position(); i--) {
+			buffer.put(i, (byte) ('0' + value % 10));
+			value /= 10;
+		}
+		buffer.position(end);
+		return this;
+	}
+
+	/**
+	 * Ends a segment.
+	 *
+	 * @param counted whether the segment is part of the message, and so
+	 * counted by <code>UNT</code>
+	 */
+	private void end(boolean counted) {
+		buffer.put((byte) '\'').put((byte) '\n');
+		if (counted) {
+			segments++;
+		}
+	}
+
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			out.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,468 @@
+package asgn2Manifests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import asgn2Containers.DangerousGoodsContainer;
+import asgn2Containers.FreightContainer;
+import asgn2Containers.RefrigeratedContainer;
+
+/**
+ * An archive of completed voyages, storing the containers on board at the
+ * end of each voyage column by column, for audits and analyses such as the
+ * tonnage carried per owner.  A scan reads and decompresses only the
+ * columns asked for, so a question about one or two columns over many
+ * voyages does not read the rest.
+ * <p>
+ * The archive is one file, starting with the magic number "CVAR" and the
+ * format (both int), followed by one block per voyage:
+ * <pre>
+ * block length and header length (int), voyage name (modified UTF-8),
+ * number of containers (int), number of columns (byte),
+ * per column: column (byte), compressed length and raw length (int),
+ * then the compressed columns in the same order
+ * </pre>
+ * A block is committed by its length: the rest of the block is written
+ * and forced to disk first, and the length last, so a block whose append
+ * was cut short by a crash reads as length 0.  Scans stop at such a torn
+ * tail, and the next append cuts it off before writing.
+ * <p>
+ * Each column is compressed with deflate.  The containers are stored in
+ * stack order, bottom first, and the columns hold, before compression:
+ * <ul>
+ * <li><code>OWNER</code>: a dictionary of the owner codes on board, as
+ * the number of codes (short) and each code's number (short), then each
+ * container's index in the dictionary (a byte, or a short if there are
+ * more than 256 owners)</li>
+ * <li><code>SERIAL</code>: the serial number (int)</li>
+ * <li><code>TYPE</code>: <code>GENERAL</code>, <code>REFRIGERATED</code>
+ * or <code>DANGEROUS</code> (byte)</li>
+ * <li><code>WEIGHT</code>: the gross weight in tonnes (byte)</li>
+ * <li><code>CATEGORY</code>: the goods category, 0 if not dangerous (byte)</li>
+ * <li><code>TEMPERATURE</code>: the setpoint, 0 if not refrigerated (int)</li>
+ * <li><code>STACK</code>: the stack number (int)</li>
+ * <li><code>HEIGHT</code>: the height in the stack (unsigned byte, so
+ * stacks may be at most 256 high)</li>
+ * </ul>
+ *
+ * @author CAB302
+ * @version 1.0
+ */
+public class VoyageArchive {
+
+	// "CVAR"
+	static final int MAGIC = 0x43564152;
+	static final int FORMAT = 1;
+	// the HEIGHT column holds unsigned bytes
+	static final int MAX_HEIGHT = 256;
+
+	/** Type of a general goods container in the <code>TYPE</code> column. */
+	public static final int GENERAL = ContainerRecords.GENERAL;
+	/** Type of a refrigerated container in the <code>TYPE</code> column. */
+	public static final int REFRIGERATED = ContainerRecords.REFRIGERATED;
+	/** Type of a dangerous goods container in the <code>TYPE</code> column. */
+	public static final int DANGEROUS = ContainerRecords.DANGEROUS;
+
+	/**
+	 * The columns of the archive.
+	 */
+	public enum Column {
+		/** The owner code, numbered from AAA (0) to ZZZ (17575) as by <code>ContainerCode.pack</code>. */
+		OWNER,
+		/** The six digit serial number. */
+		SERIAL,
+		/** The container type, <code>GENERAL</code>, <code>REFRIGERATED</code> or <code>DANGEROUS</code>. */
+		TYPE,
+		/** The gross weight in tonnes. */
+		WEIGHT,
+		/** The goods category of a dangerous goods container, otherwise 0. */
+		CATEGORY,
+		/** The setpoint of a refrigerated container, otherwise 0. */
+		TEMPERATURE,
+		/** The stack the container was in. */
+		STACK,
+		/** The height of the container in its stack. */
+		HEIGHT
+	}
+
+	/**
+	 * The columns asked for of one voyage in a scan.
+	 */
+	public static class Voyage {
+
+		private final String name;
+		private final int size;
+		private final int[][] columns = new int[Column.values().length][];
+
+		Voyage(String name, int size) {
+			this.name = name;
+			this.size = size;
+		}
+
+		/**
+		 * Returns the name the voyage was archived under.
+		 *
+		 * @return the voyage's name
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * Returns the number of containers archived for the voyage.
+		 *
+		 * @return the number of containers
+		 */
+		public int size() {
+			return size;
+		}
+
+		/**
+		 * Returns the values of a column, one per container.
+		 *
+		 * @param column the column
+		 * @return the values, or <code>null</code> if the column was not asked for
+		 */
+		public int[] get(Column column) {
+			return columns[column.ordinal()];
+		}
+	}
+
+	/**
+	 * Receives the voyages of a scan, in the order they were archived.
+	 */
+	public interface Handler {
+
+		/**
+		 * Handles one voyage.
+		 *
+		 * @param voyage the voyage, holding the columns asked for
+		 * @throws IOException to stop the scan
+		 */
+		void voyage(Voyage voyage) throws IOException;
+	}
+
+	private VoyageArchive() {
+	}
+
+	/**
+	 * Returns the three letter owner code with the given number, as found
+	 * in the <code>OWNER</code> column.
+	 *
+	 * @param owner the number of the owner code
+	 * @return the owner code
+	 */
+	public static String ownerCode(int owner) {
+		return new String(new char[] { (char) ('A' + owner / 676), (char) ('A' + owner / 26 % 26),
+				(char) ('A' + owner % 26) });
+	}
+
+	/**
+	 * Adds a completed voyage to an archive, creating the archive if it does
+	 * not exist.
+	 *
+	 * @param archive the archive file
+	 * @param name the name of the voyage
+	 * @param manifest the manifest at the end of the voyage
+	 * @throws IOException if the archive cannot be written or is not an
+	 * archive, or the manifest holds a kind of container which cannot be
+	 * archived or is more than 256 high
+	 */
+	public static void append(Path archive, String name, CargoManifest manifest) throws IOException {
+		if (manifest.maxHeight > MAX_HEIGHT) {
+			throw new IOException("Cannot archive stacks more than " + MAX_HEIGHT + " high");
+		}
+		int count = manifest.codes.size();
+		ByteBuffer[] raw = new ByteBuffer[Column.values().length];
+		raw[Column.SERIAL.ordinal()] = ByteBuffer.allocate(count * 4);
+		raw[Column.TYPE.ordinal()] = ByteBuffer.allocate(count);
+		raw[Column.WEIGHT.ordinal()] = ByteBuffer.allocate(count);
+		raw[Column.CATEGORY.ordinal()] = ByteBuffer.allocate(count);
+		raw[Column.TEMPERATURE.ordinal()] = ByteBuffer.allocate(count * 4);
+		raw[Column.STACK.ordinal()] = ByteBuffer.allocate(count * 4);
+		raw[Column.HEIGHT.ordinal()] = ByteBuffer.allocate(count);
+
+		// owner codes are numbered in the dictionary in order of first appearance
+		short[] dictionaryIndex = new short[26 * 26 * 26];
+		short[] dictionary = new short[Math.min(count, dictionaryIndex.length)];
+		int owners = 0;
+		short[] ownerIndexes = new short[count];
+		int i = 0;
+		for (int stack = 0; stack < manifest.numStacks; stack++) {
+			manifest.pageIn(stack);
+			for (int height = 0; height < manifest.heights[stack]; height++) {
+				FreightContainer container = manifest.slots[stack * manifest.maxHeight + height];
+				byte kind = ContainerRecords.kindOf(container);
+				if (kind == 0) {
+					throw new IOException("Cannot archive a container of type " + container.getType());
+				}
+				long code = container.getCode().toLong();
+				int owner = (int) (code / 10000000);
+				if (dictionaryIndex[owner] == 0) {
+					dictionary[owners++] = (short) owner;
+					dictionaryIndex[owner] = (short) owners;	// one more than the index, 0 is not yet seen
+				}
+				ownerIndexes[i++] = (short) (dictionaryIndex[owner] - 1);
+				raw[Column.SERIAL.ordinal()].putInt((int) (code % 10000000 / 10));
+				raw[Column.TYPE.ordinal()].put(kind);
+				raw[Column.WEIGHT.ordinal()].put((byte) (int) container.getGrossWeight());
+				raw[Column.CATEGORY.ordinal()].put(container instanceof DangerousGoodsContainer
+						? (byte) (int) ((DangerousGoodsContainer) container).getCategory() : 0);
+				raw[Column.TEMPERATURE.ordinal()].putInt(container instanceof RefrigeratedContainer
+						? ((RefrigeratedContainer) container).getTemperature() : 0);
+				raw[Column.STACK.ordinal()].putInt(stack);
+				raw[Column.HEIGHT.ordinal()].put((byte) height);
+			}
+		}
+		boolean wide = owners > 256;
+		ByteBuffer ownerColumn = ByteBuffer.allocate(2 + owners * 2 + count * (wide ? 2 : 1));
+		ownerColumn.putShort((short) owners);
+		for (int j = 0; j < owners; j++) {
+			ownerColumn.putShort(dictionary[j]);
+		}
+		for (int j = 0; j < count; j++) {
+			if (wide) {
+				ownerColumn.putShort(ownerIndexes[j]);
+			} else {
+				ownerColumn.put((byte) ownerIndexes[j]);
+			}
+		}
+		raw[Column.OWNER.ordinal()] = ownerColumn;
+
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		DataOutputStream headerOut = new DataOutputStream(header);
+		headerOut.writeUTF(name);
+		headerOut.writeInt(count);
+		headerOut.writeByte(raw.length);
+		byte[][] compressed = new byte[raw.length][];
+		int dataLength = 0;
+		Deflater deflater = new Deflater();
+		try {
+			for (int j = 0; j < raw.length; j++) {
+				compressed[j] = deflate(deflater, raw[j].array(), raw[j].position());
+				headerOut.writeByte(j);
+				headerOut.writeInt(compressed[j].length);
+				headerOut.writeInt(raw[j].position());
+				dataLength += compressed[j].length;
+			}
+		} finally {
+			deflater.end();
+		}
+
+		// the block without its length, which is written last to commit it
+		ByteBuffer block = ByteBuffer.allocate(4 + header.size() + dataLength);
+		block.putInt(header.size()).put(header.toByteArray());
+		for (byte[] column : compressed) {
+			block.put(column);
+		}
+		block.flip();
+		ByteBuffer length = ByteBuffer.allocate(4).putInt(block.remaining());
+		length.flip();
+		try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			long end;
+			if (channel.size() < 8) {
+				// a new archive, or one whose creation was cut short
+				ByteBuffer fileHeader = ByteBuffer.allocate(8).putInt(MAGIC).putInt(FORMAT);
+				fileHeader.flip();
+				channel.truncate(0);
+				write(channel, fileHeader, 0);
+				end = 8;
+			} else {
+				checkHeader(channel);
+				end = committedEnd(channel);
+				channel.truncate(end);		// drop a torn tail before appending to it
+			}
+			write(channel, block, end + 4);
+			channel.force(false);
+			write(channel, length, end);
+			channel.force(false);
+		}
+	}
+
+	/**
+	 * Reads some columns of every voyage in an archive.
+	 *
+	 * @param archive the archive file
+	 * @param columns the columns to read
+	 * @param handler receives each voyage
+	 * @return the number of voyages read
+	 * @throws IOException if the archive cannot be read or is corrupt, or the
+	 * handler throws it
+	 */
+	public static int scan(Path archive, Set<Column> columns, Handler handler) throws IOException {
+		EnumSet<Column> wanted = EnumSet.copyOf(columns);
+		Column[] all = Column.values();
+		int voyages = 0;
+		Inflater inflater = new Inflater();
+		try (FileChannel channel = FileChannel.open(archive, StandardOpenOption.READ)) {
+			checkHeader(channel);
+			long position = 8;
+			long size = channel.size();
+			while (position + 8 <= size) {
+				ByteBuffer lengths = read(channel, position, 8);
+				int blockLength = lengths.getInt();
+				int headerLength = lengths.getInt();
+				if (blockLength == 0) {
+					break;		// a torn tail, the append was never committed
+				}
+				if (blockLength < 4 + headerLength || headerLength < 0 || position + 4 + blockLength > size) {
+					throw new IOException("Corrupt archive: bad block at " + position);
+				}
+				DataInputStream header = new DataInputStream(new ByteArrayInputStream(
+						read(channel, position + 8, headerLength).array()));
+				Voyage voyage = new Voyage(header.readUTF(), header.readInt());
+				int columnCount = header.readUnsignedByte();
+				long columnPosition = position + 8 + headerLength;
+				for (int j = 0; j < columnCount; j++) {
+					int id = header.readUnsignedByte();
+					int compressedLength = header.readInt();
+					int rawLength = header.readInt();
+					if (id < all.length && wanted.contains(all[id])) {
+						byte[] raw = inflate(inflater, read(channel, columnPosition, compressedLength).array(), rawLength);
+						voyage.columns[id] = decode(all[id], ByteBuffer.wrap(raw), voyage.size);
+					}
+					columnPosition += compressedLength;
+				}
+				handler.voyage(voyage);
+				voyages++;
+				position += 4 + blockLength;
+			}
+		} finally {
+			inflater.end();
+		}
+		return voyages;
+	}
+
+	/**
+	 * Finds the end of the last committed block of an archive.
+	 *
+	 * @param channel the archive, whose header has been checked
+	 * @return the position after the last committed block
+	 * @throws IOException if the archive cannot be read or a committed
+	 * block does not fit in it
+	 */
+	private static long committedEnd(FileChannel channel) throws IOException {
+		long position = 8;
+		long size = channel.size();
+		while (position + 8 <= size) {
+			int blockLength = read(channel, position, 4).getInt();
+			if (blockLength == 0) {
+				break;
+			}
+			if (blockLength < 4 || position + 4 + blockLength > size) {
+				throw new IOException("Corrupt archive: bad block at " + position);
+			}
+			position += 4 + blockLength;
+		}
+		return position;
+	}
+
+	private static int[] decode(Column column, ByteBuffer raw, int count) throws IOException {
+		int[] values = new int[count];
+		try {
+			switch (column) {
+			case OWNER:
+				int owners = raw.getShort();
+				short[] dictionary = new short[owners];
+				for (int i = 0; i < owners; i++) {
+					dictionary[i] = raw.getShort();
+				}
+				for (int i = 0; i < count; i++) {
+					values[i] = dictionary[owners > 256 ? raw.getShort() : raw.get() & 0xFF];
+				}
+				break;
+			case SERIAL:
+			case TEMPERATURE:
+			case STACK:
+				raw.asIntBuffer().get(values);
+				break;
+			default:
+				for (int i = 0; i < count; i++) {
+					values[i] = raw.get() & 0xFF;		// all byte columns are unsigned
+				}
+			}
+		} catch (RuntimeException e) {
+			throw new IOException("Corrupt archive: bad " + column + " column", e);
+		}
+		return values;
+	}
+
+	private static byte[] deflate(Deflater deflater, byte[] raw, int length) {
+		deflater.reset();
+		deflater.setInput(raw, 0, length);
+		deflater.finish();
+		byte[] out = new byte[length / 2 + 64];
+		int size = 0;
+		while (!deflater.finished()) {
+			if (size == out.length) {
+				out = Arrays.copyOf(out, out.length * 2);
+			}
+			size += deflater.deflate(out, size, out.length - size);
+		}
+		return Arrays.copyOf(out, size);
+	}
+
+	private static byte[] inflate(Inflater inflater, byte[] compressed, int rawLength) throws IOException {
+		inflater.reset();
+		inflater.setInput(compressed);
+		byte[] raw = new byte[rawLength];
+		try {
+			int size = 0;
+			while (size < rawLength && !inflater.finished()) {
+				int inflated = inflater.inflate(raw, size, rawLength - size);
+				if (inflated == 0 && inflater.needsInput()) {
+					break;
+				}
+				size += inflated;
+			}
+			if (size != rawLength) {
+				throw new IOException("Corrupt archive: a column is too short");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("Corrupt archive: " + e.getMessage());
+		}
+		return raw;
+	}
+
+	private static void checkHeader(FileChannel channel) throws IOException {
+		ByteBuffer header = read(channel, 0, 8);
+		if (header.getInt() != MAGIC) {
+			throw new IOException("Not a voyage archive");
+		}
+		int format = header.getInt();
+		if (format != FORMAT) {
+			throw new IOException("Unsupported voyage archive format " + format);
+		}
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Corrupt archive: unexpected end of file");
+			}
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			channel.write(buffer, position + buffer.position());
+		}
+	}
+}
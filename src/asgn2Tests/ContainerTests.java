@@ -10,10 +10,18 @@ package asgn2Tests;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.experimental.categories.Categories;
 
+import asgn2Codes.CodeVerifier;
 import asgn2Codes.ContainerCode;
 import asgn2Containers.DangerousGoodsContainer;
 import asgn2Containers.FreightContainer;
@@ -269,6 +277,125 @@ public class ContainerTests {
 		assertTrue(dangerousGoodsContainer.getCategory().equals(CATEGORY));
 	}
 	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#pack(CharSequence code)}.
+	 */
+	@Test
+	public void packMatchesToLong() {
+		assertTrue(ContainerCode.pack("MSCU6639871") == valid_code_1.toLong());
+		assertTrue(ContainerCode.pack("MSCU6639871".getBytes(), 0) == valid_code_1.toLong());
+		assertTrue(ContainerCode.pack("MSCU6639870") == ContainerCode.INVALID);
+		assertTrue(ContainerCode.pack("xMSCU663987") == ContainerCode.INVALID);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#fromLong(long packed)}.
+	 */
+	@Test
+	public void fromLongRoundTrip() throws InvalidCodeException {
+		ContainerCode copy = ContainerCode.fromLong(valid_code_2.toLong());
+		assertTrue(copy.toString().equals("KOCU8090115"));
+		assertTrue(copy.equals(valid_code_2));
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#fromLong(long packed)}.
+	 * changed the check digit of the packed code
+	 */
+	@Test(expected=Exception.class)
+	public void fromLongInvalid() throws InvalidCodeException {
+		ContainerCode.fromLong(valid_code_2.toLong() + 1);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#hashCode()}.
+	 */
+	@Test
+	public void checkEqualCopies() throws InvalidCodeException {
+		ContainerCode copy = new ContainerCode(new String("MSCU6639871"));
+		assertTrue(copy.equals(valid_code_1));
+		assertTrue(copy.hashCode() == valid_code_1.hashCode());
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#ContainerCode(String code)}.
+	 * The owner code has to be at the start of the code
+	 */
+	@Test(expected=Exception.class)
+	public void ownerCodeNotAtStart() throws InvalidCodeException{
+		code_validatoin_test = new ContainerCode("xABCU123456");
+	}
 	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#validate(CharSequence code)}.
+	 */
+	@Test
+	public void validateResults() {
+		assertTrue(ContainerCode.validate("MSCU6639871") == ContainerCode.VALID);
+		assertTrue(ContainerCode.validate(null) == ContainerCode.MISSING);
+		assertTrue(ContainerCode.validate("MSCU0006639871") == ContainerCode.BAD_LENGTH);
+		assertTrue(ContainerCode.validate("mscU6639871") == ContainerCode.BAD_OWNER_CODE);
+		assertTrue(ContainerCode.validate("MSCT6639870") == ContainerCode.BAD_CATEGORY);
+		assertTrue(ContainerCode.validate("MSCU66X9871") == ContainerCode.BAD_SERIAL_NUMBER);
+		assertTrue(ContainerCode.validate("MSCU6639870") == ContainerCode.BAD_CHECK_DIGIT);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#message(int result)}.
+	 * The constructor reports the same message as validate
+	 */
+	@Test
+	public void validateMessageMatchesConstructor() {
+		try {
+			new ContainerCode("MSCT6639870");
+			assertTrue(false);
+		} catch (InvalidCodeException e) {
+			assertTrue(e.getMessage().equals("InvalidCodeException: " + ContainerCode.message(ContainerCode.BAD_CATEGORY)));
+		}
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#tryParse(CharSequence code)}.
+	 */
+	@Test
+	public void tryParseCodes() {
+		assertTrue(ContainerCode.tryParse("MSCU6639871").equals(valid_code_1));
+		assertTrue(ContainerCode.tryParse("MSCU6639870") == null);
+	}
+	
+	
+	/**
+	 * Test method for {@link asgn2Codes.ContainerCode#validate(ByteBuffer bytes, int offset, int length)}.
+	 * Bytes give the same results as characters
+	 */
+	@Test
+	public void validateBytes() {
+		String[] codes = { "MSCU6639871", "", "MSCU0006639871", "mscU6639871", "MSCT6639870", "MSCU66X9871",
+				"MSCU6639870" };
+		for (String code : codes) {
+			ByteBuffer bytes = ByteBuffer.wrap(("  " + code).getBytes(StandardCharsets.US_ASCII));
+			assertTrue(ContainerCode.validate(bytes, 2, code.length()) == ContainerCode.validate(code.isEmpty() ? null : code));
+			assertTrue(bytes.position() == 0);
+		}
+	}
+	
+	/**
+	 * Test method for {@link asgn2Codes.CodeVerifier#verify(Path file, Writer report)}.
+	 * Offsets of the invalid lines are reported in order
+	 */
+	@Test
+	public void verifyFile() throws IOException {
+		Path file = Files.createTempFile("codes", ".txt");
+		try {
+			Files.write(file, "MSCU6639871\nMSCU6639870\r\nFQUU8201776\n\nINKU263383\nHCTU7419009".getBytes(StandardCharsets.US_ASCII));
+			StringWriter report = new StringWriter();
+			assertTrue(new CodeVerifier(3).verify(file, report) == 3);
+			assertTrue(report.toString().equals("12\t" + ContainerCode.message(ContainerCode.BAD_CHECK_DIGIT) + "\n"
+					+ "37\t" + ContainerCode.message(ContainerCode.MISSING) + "\n"
+					+ "38\t" + ContainerCode.message(ContainerCode.BAD_LENGTH) + "\n"));
+		} finally {
+			Files.delete(file);
+		}
+	}
 	
 }
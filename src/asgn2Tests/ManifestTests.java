@@ -9,6 +9,21 @@ package asgn2Tests;
  * IBMU4882351
  */
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Before;
 import org.junit.Test;
 
@@ -21,6 +36,24 @@ import asgn2Exceptions.InvalidCodeException;
 import asgn2Exceptions.InvalidContainerException;
 import asgn2Exceptions.ManifestException;
 import asgn2Manifests.CargoManifest;
+import asgn2Manifests.ConcurrentCargoManifest;
+import asgn2Manifests.ContainerMove;
+import asgn2Manifests.ContainerPosition;
+import asgn2Manifests.ContainerQuery;
+import asgn2Manifests.DigOutPlanner;
+import asgn2Manifests.LoadListImporter;
+import asgn2Manifests.ManifestChange;
+import asgn2Manifests.ManifestDelta;
+import asgn2Manifests.ManifestFile;
+import asgn2Manifests.ManifestJournal;
+import asgn2Manifests.ManifestResult;
+import asgn2Manifests.ManifestSnapshot;
+import asgn2Manifests.SharedManifest;
+import asgn2Manifests.SharedManifestView;
+import asgn2Manifests.StowageOptimizer;
+import asgn2Manifests.StowagePlan;
+import asgn2Manifests.StowagePlanExporter;
+import asgn2Manifests.VoyageArchive;
 import static org.junit.Assert.*;
 
 /**
@@ -196,8 +229,945 @@ public class ManifestTests {
 		
 	}
 	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#loadContainer(FreightContainer newContainer)}.
+	 * A stack that becomes empty is reused by the next container of any type
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void emptiedStackIsReused() throws ManifestException, InvalidCodeException{
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_3);
+		manifestTest.unloadContainer(valid_code_1);
+		manifestTest.loadContainer(container_2);
+		assertTrue(manifestTest.whichStack(valid_code_2) == 0);
+		assertTrue(manifestTest.whichStack(valid_code_3) == 1);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#loadContainer(FreightContainer newContainer)}.
+	 * A full stack is skipped until a container is unloaded from it
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void fullStackIsSkipped() throws ManifestException, InvalidCodeException{
+		manifestTest = new CargoManifest(NUM_STACKS, 1, MAX_WEIGHT);
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_2);
+		assertTrue(manifestTest.whichStack(valid_code_2) == 1);
+		manifestTest.unloadContainer(valid_code_1);
+		manifestTest.unloadContainer(valid_code_2);
+		manifestTest.loadContainer(container_2);
+		assertTrue(manifestTest.whichStack(valid_code_2) == 0);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#toArray(Integer stackNo)}.
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void toArrayStartsAtBottom() throws ManifestException, InvalidCodeException{
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_3);
+		manifestTest.loadContainer(container_2);
+		FreightContainer[] stack = manifestTest.toArray(0);
+		assertTrue(stack.length == 2);
+		assertTrue(stack[0] == container_1);
+		assertTrue(stack[1] == container_2);
+		assertTrue(manifestTest.toArray(2).length == 0);
+		assertTrue(manifestTest.toString(valid_code_3).startsWith("|| MSCU6639871 || FQUU8201776 ||\n||*HCTU7419009*||\n||  ||\n"));
+	}
+	
+	/**
+	 * Returns a valid container code with the given serial number, finding
+	 * the check digit by trial.
+	 */
+	private static ContainerCode codeFor(int serial) throws InvalidCodeException {
+		String prefix = "KOCU" + String.format("%06d", serial);
+		for (int digit = 0; digit < 9; digit++) {
+			if (ContainerCode.pack(prefix + digit) != ContainerCode.INVALID) {
+				return new ContainerCode(prefix + digit);
+			}
+		}
+		return new ContainerCode(prefix + 9);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#unloadContainer(ContainerCode containerId)}.
+	 * Loads and unloads many containers so codes are found after others are removed
+	 * @throws InvalidCodeException 
+	 * @throws InvalidContainerException 
+	 */
+	@Test
+	public void manyContainers() throws ManifestException, InvalidCodeException, InvalidContainerException{
+		manifestTest = new CargoManifest(100, 10, 1000 * 30);
+		ContainerCode[] codes = new ContainerCode[1000];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = codeFor(i * 37);
+			manifestTest.loadContainer(new GeneralGoodsContainer(codes[i], 30));
+		}
+		for (int i = codes.length - 1; i >= 0; i--) {
+			if (i % 10 >= 5) {
+				manifestTest.unloadContainer(codes[i]);
+			}
+		}
+		for (int i = 0; i < codes.length; i++) {
+			if (i % 10 >= 5) {
+				assertTrue(manifestTest.whichStack(codes[i]) == null);
+			} else {
+				assertTrue(manifestTest.whichStack(codes[i]) == i / 10);
+				assertTrue(manifestTest.howHigh(codes[i]) == i % 10);
+			}
+		}
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#locate(ContainerCode queryContainer)}.
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void locateContainers() throws ManifestException, InvalidCodeException{
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_3);
+		manifestTest.loadContainer(container_2);
+		assertTrue(manifestTest.locate(valid_code_2).equals(new ContainerPosition(0, 1)));
+		assertTrue(manifestTest.locate(valid_code_3).equals(new ContainerPosition(1, 0)));
+		manifestTest.unloadContainer(valid_code_2);
+		assertTrue(manifestTest.locate(valid_code_2) == null);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#loadAll(Collection newContainers)}.
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void loadAllPositions() throws ManifestException, InvalidCodeException{
+		List<ContainerPosition> positions = manifestTest.loadAll(Arrays.asList(container_1, container_3, container_2));
+		assertTrue(positions.get(0).equals(new ContainerPosition(0, 0)));
+		assertTrue(positions.get(1).equals(new ContainerPosition(1, 0)));
+		assertTrue(positions.get(2).equals(new ContainerPosition(0, 1)));
+		assertTrue(manifestTest.howHigh(valid_code_2) == 1);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#loadAll(Collection newContainers)}.
+	 * Nothing is loaded when one container of the batch does not fit
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void loadAllNothingWhenNoSpace() throws ManifestException, InvalidCodeException{
+		manifestTest = new CargoManifest(1, MAX_HEIGHT, MAX_WEIGHT);
+		try {
+			manifestTest.loadAll(Arrays.asList(container_1, container_2, container_3));
+			assertTrue(false);
+		} catch (ManifestException e) {
+			assertTrue(manifestTest.whichStack(valid_code_1) == null);
+			assertTrue(manifestTest.whichStack(valid_code_2) == null);
+			assertTrue(manifestTest.toArray(0).length == 0);
+		}
+		manifestTest.loadContainer(container_3);
+		assertTrue(manifestTest.whichStack(valid_code_3) == 0);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#loadAll(Collection newContainers)}.
+	 * @throws InvalidCodeException 
+	 */
+	@Test(expected=ManifestException.class)
+	public void loadAllDuplicateInBatch() throws ManifestException, InvalidCodeException{
+		manifestTest.loadAll(Arrays.asList(container_1, container_2, container_1));
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.ConcurrentCargoManifest#loadContainer(FreightContainer newContainer)}.
+	 * Several threads load and unload at once without losing or duplicating containers
+	 * @throws InvalidCodeException 
+	 * @throws InvalidContainerException 
+	 */
+	@Test
+	public void concurrentLoading() throws Exception{
+		final ConcurrentCargoManifest shared = new ConcurrentCargoManifest(32, 40, 1280 * 10);
+		final ContainerCode[] codes = new ContainerCode[1280];
+		for (int i = 0; i < codes.length; i++) {
+			codes[i] = codeFor(i);
+		}
+		Thread[] threads = new Thread[8];
+		final AtomicInteger failures = new AtomicInteger();
+		for (int t = 0; t < threads.length; t++) {
+			final int first = t;
+			threads[t] = new Thread() {
+				@Override
+				public void run() {
+					try {
+						for (int i = first; i < codes.length; i += 8) {
+							shared.loadContainer(new GeneralGoodsContainer(codes[i], 10));
+							if (i % 3 == 0) {
+								shared.unloadContainer(codes[i]); // on top, unless another thread loaded on the same stack
+							}
+						}
+					} catch (Exception e) {
+						if (!e.getMessage().contains("not on the top")) {
+							failures.incrementAndGet();
+						}
+					}
+				}
+			};
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		assertTrue(failures.get() == 0);
+		int onBoard = 0;
+		for (int i = 0; i < 32; i++) {
+			FreightContainer[] stack = shared.toArray(i);
+			for (int j = 0; j < stack.length; j++) {
+				assertTrue(shared.whichStack(stack[j].getCode()) == i);
+				assertTrue(shared.howHigh(stack[j].getCode()) == j);
+			}
+			onBoard += stack.length;
+		}
+		assertTrue(shared.getCurrentWeight() == onBoard * 10);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#snapshot()}.
+	 * A snapshot does not change when the manifest does
+	 * @throws InvalidCodeException 
+	 */
+	@Test
+	public void snapshotIsImmutable() throws ManifestException, InvalidCodeException{
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_3);
+		ManifestSnapshot before = manifestTest.snapshot();
+		assertTrue(manifestTest.snapshot() == before);
+		manifestTest.loadContainer(container_2);
+		manifestTest.unloadContainer(valid_code_3);
+		ManifestSnapshot after = manifestTest.snapshot();
+		assertTrue(before.getVersion() == 2);
+		assertTrue(after.getVersion() == manifestTest.getVersion());
+		assertTrue(before.getHeight(0) == 1);
+		assertTrue(before.howHigh(valid_code_2) == null);
+		assertTrue(before.whichStack(valid_code_3) == 1);
+		assertTrue(after.getContainer(0, 1) == container_2);
+		assertTrue(after.whichStack(valid_code_3) == null);
+		assertTrue(after.toString(valid_code_2).equals(manifestTest.toString(valid_code_2)));
+		assertTrue(before.getCurrentWeight() == 45);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#render(Appendable out, ContainerCode toFind, int fromStack, int toStack)}.
+	 * @throws Exception 
+	 */
+	@Test
+	public void renderRangeOfStacks() throws Exception{
+		manifestTest.loadContainer(container_1);
+		manifestTest.loadContainer(container_3);
+		manifestTest.loadContainer(container_2);
+		StringWriter out = new StringWriter();
+		manifestTest.render(out, valid_code_2, 0, 3);
+		assertTrue(out.toString().equals("|| MSCU6639871 ||*FQUU8201776*||\n|| HCTU7419009 ||\n||  ||\n"));
+		out = new StringWriter();
+		manifestTest.render(out, null, 1, 2);
+		assertTrue(out.toString().equals("|| HCTU7419009 ||\n"));
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.CargoManifest#render(Appendable out, ContainerCode toFind, int fromStack, int toStack)}.
+	 * @throws Exception 
+	 */
+	@Test(expected=ManifestException.class)
+	public void renderNoSuchStack() throws Exception{
+		manifestTest.render(new StringWriter(), null, 0, NUM_STACKS + 1);
+	}
+	
+	/**
+	 * Test method for {@link asgn2Manifests.ManifestFile#save(CargoManifest manifest, Path file)}.
+	 * @throws Exception 
+	 */
+	@Test
+	public void saveAndLoad() throws Exception{
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadAll(Arrays.asList(container_1, container_3, cold, container_2));
+		Path file = Files.createTempFile("manifest", ".bin");
+		try {
+			ManifestFile.save(manifestTest, file);
+			CargoManifest restored = ManifestFile.load(file);
+			assertTrue(restored.toString().equals(manifestTest.toString()));
+			assertTrue(restored.getVersion() == manifestTest.getVersion());
+			assertTrue(restored.locate(valid_code_2).equals(new ContainerPosition(0, 1)));
+			FreightContainer[] stack = restored.toArray(1);
+			assertTrue(((DangerousGoodsContainer) stack[0]).getCategory() == 2);
+			assertTrue(((RefrigeratedContainer) restored.toArray(2)[0]).getTemperature() == -18);
+			restored.unloadContainer(valid_code_2);
+			restored.loadContainer(container_2);
+			assertTrue(restored.howHigh(valid_code_2) == 1);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	
+	@Test
+	public void setTemperature() throws Exception{
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadContainer(cold);
+		ManifestSnapshot before = manifestTest.snapshot();
+		manifestTest.setTemperature(new ContainerCode("INKU2633836"), -5);
+		assertTrue(((RefrigeratedContainer) manifestTest.toArray(0)[0]).getTemperature() == -5);
+		assertTrue(((RefrigeratedContainer) before.getContainer(0, 0)).getTemperature() == -18);
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void setTemperatureNotRefrigerated() throws Exception{
+		manifestTest.loadContainer(container_1);
+		manifestTest.setTemperature(valid_code_1, -5);
+	}
+	
+	@Test
+	public void journalRecovery() throws Exception{
+		Path directory = Files.createTempDirectory("journal");
+		Path snapshotFile = directory.resolve("manifest.bin");
+		Path journalFile = directory.resolve("manifest.journal");
+		ContainerCode coldCode = new ContainerCode("INKU2633836");
+		try {
+			ManifestJournal journal = ManifestJournal.open(snapshotFile, journalFile, manifestTest, 2, 0);
+			journal.loadContainer(container_1);
+			journal.loadContainer(container_3);
+			journal.checkpoint();
+			journal.loadContainer(new RefrigeratedContainer(coldCode, 20, -18));
+			journal.setTemperature(coldCode, -5);
+			journal.loadContainer(container_2);
+			journal.unloadContainer(valid_code_2);
+			journal.loadContainer(container_2);
+			String expected = journal.toString();
+			journal.close();
+			
+			// a torn record at the end is dropped
+			Files.write(journalFile, new byte[] {1, 2, 3}, StandardOpenOption.APPEND);
+			journal = ManifestJournal.open(snapshotFile, journalFile, new CargoManifest(5, 5, 100), 2, 0);
+			assertTrue(journal.toString().equals(expected));
+			assertTrue(journal.getVersion() == 7);
+			assertTrue(((RefrigeratedContainer) journal.toArray(2)[0]).getTemperature() == -5);
+			journal.close();
+			assertTrue(Files.size(journalFile) == 5 * 28);
+		} finally {
+			Files.deleteIfExists(snapshotFile);
+			Files.deleteIfExists(journalFile);
+			Files.delete(directory);
+		}
+	}
+	
+	
+	@Test
+	public void importLoadList() throws Exception{
+		Path file = Files.createTempFile("loadlist", ".csv");
+		try {
+			Files.write(file, Arrays.asList("# code,type,weight,extra", "MSCU6639871,G,15",
+					"HCTU7419009, Dangerous Goods ,30,2", "", "INKU2633836,R,20,-18", "MSCU6639872,G,15",
+					"FQUU8201776,X,30", "MSCU6639871,G,15", "FQUU8201776,g,30,"), StandardCharsets.US_ASCII);
+			StringBuilder errors = new StringBuilder();
+			LoadListImporter.Summary summary = new LoadListImporter(',', 2).importFile(file, manifestTest, errors);
+			assertTrue(summary.getLines() == 9);
+			assertTrue(summary.getLoaded() == 4);
+			assertTrue(summary.getRejected() == 3);
+			String[] reported = errors.toString().split("\n");
+			assertTrue(reported[0].startsWith("line 6: "));
+			assertTrue(reported[1].startsWith("line 7: Unknown container type"));
+			assertTrue(reported[2].startsWith("line 8: "));
+			assertTrue(manifestTest.locate(valid_code_2).equals(new ContainerPosition(0, 1)));
+			assertTrue(manifestTest.whichStack(new ContainerCode("INKU2633836")) == 2);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void importFixedWidthLoadList() throws Exception{
+		Path file = Files.createTempFile("loadlist", ".txt");
+		try {
+			Files.write(file, Arrays.asList("MSCU6639871 G 15", "HCTU7419009 D 30    2"), StandardCharsets.US_ASCII);
+			StringBuilder errors = new StringBuilder();
+			LoadListImporter importer = new LoadListImporter(new int[] {12, 2, 3, 5}, 1);
+			assertTrue(importer.importFile(file, manifestTest, errors).getLoaded() == 2);
+			assertTrue(((DangerousGoodsContainer) manifestTest.toArray(1)[0]).getCategory() == 2);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	
+	@Test
+	public void exportStowagePlan() throws Exception{
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadAll(Arrays.asList(container_1, container_3, cold, container_2));
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		int exported = StowagePlanExporter.export(manifestTest, "PLAN+1", new Date(0), Channels.newChannel(out));
+		assertTrue(exported == 4);
+		assertTrue(out.toString("US-ASCII").equals("UNB+UNOA:2+CAB302+CARRIER+700101:0000+PLAN?+1'\n"
+				+ "UNH+PLAN?+1+BAPLIE:D:95B:UN:SMDG20'\nBGM++PLAN?+1+9'\nDTM+137:197001010000:203'\n"
+				+ "LOC+147+0000001::5'\nMEA+WT++KGM:15000'\nEQD+CN+MSCU6639871+GP'\n"
+				+ "LOC+147+0000002::5'\nMEA+WT++KGM:30000'\nEQD+CN+FQUU8201776+GP'\n"
+				+ "LOC+147+0000101::5'\nMEA+WT++KGM:30000'\nDGS+IMD+2'\nEQD+CN+HCTU7419009+GP'\n"
+				+ "LOC+147+0000201::5'\nMEA+WT++KGM:20000'\nTMP+2+-18:CEL'\nEQD+CN+INKU2633836+RE'\n"
+				+ "UNT+18+PLAN?+1'\nUNZ+1+PLAN?+1'\n"));
+	}
+	
+	
+	@Test
+	public void changesSince() throws Exception{
+		manifestTest.loadContainer(container_1);
+		long version = manifestTest.getVersion();
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadContainer(cold);
+		manifestTest.setTemperature(cold.getCode(), -5);
+		manifestTest.unloadContainer(valid_code_1);
+		ManifestDelta delta = manifestTest.changesSince(version);
+		assertFalse(delta.isSnapshot());
+		assertTrue(delta.getToVersion() == manifestTest.getVersion());
+		List<ManifestChange> changes = delta.getChanges();
+		assertTrue(changes.size() == 3);
+		assertTrue(changes.get(0).getKind() == ManifestChange.Kind.LOAD);
+		assertTrue(changes.get(0).getPosition().equals(new ContainerPosition(1, 0)));
+		assertTrue(changes.get(1).getKind() == ManifestChange.Kind.SETPOINT);
+		assertTrue(((RefrigeratedContainer) changes.get(1).getContainer()).getTemperature() == -5);
+		assertTrue(changes.get(2).getKind() == ManifestChange.Kind.UNLOAD);
+		assertTrue(changes.get(2).getContainer() == container_1);
+		assertTrue(manifestTest.changesSince(manifestTest.getVersion()).getChanges().isEmpty());
+	}
+	
+	@Test
+	public void changesSinceOverrun() throws Exception{
+		CargoManifest manifest = new CargoManifest(5, 5, 100, 2);
+		manifest.loadContainer(container_1);
+		manifest.loadContainer(container_2);
+		manifest.loadContainer(container_3);
+		assertFalse(manifest.changesSince(1).isSnapshot());
+		ManifestDelta delta = manifest.changesSince(0);
+		assertTrue(delta.isSnapshot());
+		assertTrue(delta.getSnapshot().getVersion() == 3);
+		assertTrue(delta.getSnapshot().toString().equals(manifest.toString()));
+	}
+	
+	
+	@Test
+	public void archiveVoyages() throws Exception{
+		Path archive = Files.createTempFile("voyages", ".arc");
+		Files.delete(archive);
+		try {
+			manifestTest.loadAll(Arrays.asList(container_1, container_3, container_2));
+			VoyageArchive.append(archive, "first", manifestTest);
+			manifestTest.unloadContainer(valid_code_2);
+			VoyageArchive.append(archive, "second", manifestTest);
+			final StringBuilder scanned = new StringBuilder();
+			int voyages = VoyageArchive.scan(archive, EnumSet.of(VoyageArchive.Column.OWNER, VoyageArchive.Column.WEIGHT),
+					new VoyageArchive.Handler() {
+				public void voyage(VoyageArchive.Voyage voyage) {
+					assertTrue(voyage.get(VoyageArchive.Column.SERIAL) == null);
+					scanned.append(voyage.getName()).append(':');
+					for (int i = 0; i < voyage.size(); i++) {
+						scanned.append(' ').append(VoyageArchive.ownerCode(voyage.get(VoyageArchive.Column.OWNER)[i]))
+								.append(voyage.get(VoyageArchive.Column.WEIGHT)[i]);
+					}
+					scanned.append(';');
+				}
+			});
+			assertTrue(voyages == 2);
+			assertTrue(scanned.toString().equals("first: MSC15 FQU30 HCT30;second: MSC15 HCT30;"));
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+	
+	@Test
+	public void openLazily() throws Exception{
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadAll(Arrays.asList(container_1, container_3, cold, container_2));
+		Path file = Files.createTempFile("manifest", ".bin");
+		try {
+			ManifestFile.save(manifestTest, file);
+			CargoManifest opened = ManifestFile.open(file);
+			assertTrue(opened.snapshot().toString().equals(manifestTest.toString()));
+			assertTrue(opened.getVersion() == manifestTest.getVersion());
+			assertTrue(opened.howHigh(valid_code_2) == 1);
+			assertTrue(opened.locate(valid_code_2).equals(new ContainerPosition(0, 1)));
+			assertTrue(opened.getStackWeight(0) == manifestTest.getStackWeight(0));
+			assertTrue(opened.getRemainingCapacity("RefrigeratedContainer")
+					== manifestTest.getRemainingCapacity("RefrigeratedContainer"));
+			assertTrue(((RefrigeratedContainer) opened.toArray(2)[0]).getTemperature() == -18);
+			ManifestSnapshot before = opened.snapshot();
+			opened.unloadContainer(valid_code_2);
+			opened.loadContainer(container_2);
+			assertTrue(before.toString().equals(manifestTest.toString()));
+			assertTrue(opened.toString().equals(opened.snapshot().toString()));
+			assertTrue(opened.howHigh(valid_code_2) == 1);
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void sharedManifest() throws Exception{
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 20, -18);
+		manifestTest.loadAll(Arrays.asList(container_1, cold));
+		Path file = Files.createTempFile("manifest", ".shm");
+		try {
+			SharedManifest shared = SharedManifest.create(manifestTest, file);
+			SharedManifestView view = SharedManifestView.open(file);
+			assertTrue(view.toString().equals(manifestTest.toString()));
+			manifestTest.loadContainer(container_2);
+			manifestTest.setTemperature(new ContainerCode("INKU2633836"), -5);
+			assertTrue(view.getVersion() == 2);
+			assertTrue(shared.publish() == 4);
+			assertTrue(view.getVersion() == 4);
+			assertTrue(view.locate(valid_code_2).equals(new ContainerPosition(0, 1)));
+			assertTrue(((RefrigeratedContainer) view.toArray(1)[0]).getTemperature() == -5);
+			manifestTest.unloadContainer(valid_code_2);
+			shared.publish();
+			assertTrue(view.getHeight(0) == 1);
+			assertTrue(view.getCurrentWeight() == manifestTest.snapshot().getCurrentWeight());
+			assertTrue(view.toString(valid_code_1).equals(manifestTest.toString(valid_code_1)));
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void tryLoadAndUnload() throws Exception{
+		CargoManifest small = new CargoManifest(1, 1, 40);
+		assertTrue(small.tryLoad(container_1) == ManifestResult.DONE);
+		assertTrue(small.tryLoad(container_1) == ManifestResult.DUPLICATE_CODE);
+		assertTrue(small.tryLoad(new GeneralGoodsContainer(valid_code_3, 20)) == ManifestResult.NO_SPACE);
+		assertTrue(small.tryLoad(container_2) == ManifestResult.WEIGHT_LIMIT);
+		assertTrue(small.tryUnload(valid_code_2) == ManifestResult.NOT_ON_BOARD);
+		assertTrue(small.tryUnload(valid_code_1) == ManifestResult.DONE);
+		assertTrue(small.getVersion() == 2);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2));
+		assertTrue(manifestTest.tryUnload(valid_code_1) == ManifestResult.NOT_ON_TOP);
+		assertTrue(ManifestResult.NOT_ON_TOP.getMessage().equals("The container is not on the top of that stack"));
+	}
+	
+	@Test
+	public void manifestExceptionWithoutStackTrace() {
+		ManifestException exception = new ManifestException("No such container", false);
+		assertTrue(exception.getStackTrace().length == 0);
+		assertTrue(exception.getMessage().equals("ManifestException: No such container"));
+	}
+	
+	@Test
+	public void findContainers() throws Exception{
+		manifestTest = new CargoManifest(NUM_STACKS, MAX_HEIGHT, 1000);
+		RefrigeratedContainer cold = new RefrigeratedContainer(new ContainerCode("INKU2633836"), 28, -18);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2, container_3, cold));
+		assertTrue(manifestTest.find(new ContainerQuery()).size() == 4);
+		assertTrue(manifestTest.find(new ContainerQuery().owner("INK")).equals(Arrays.asList(cold)));
+		assertTrue(manifestTest.find(new ContainerQuery().type("RefrigeratedContainer")).equals(Arrays.asList(cold)));
+		assertTrue(manifestTest.find(new ContainerQuery().minWeight(26)).equals(Arrays.asList(container_2, container_3, cold)));
+		assertTrue(manifestTest.find(new ContainerQuery().category(2)).equals(Arrays.asList(container_3)));
+		assertTrue(manifestTest.find(new ContainerQuery().owner("INK").maxWeight(25)).isEmpty());
+		assertTrue(manifestTest.find(new ContainerQuery().type("NoSuchContainer")).isEmpty());
+		
+		manifestTest.unloadContainer(new ContainerCode("INKU2633836"));
+		manifestTest.unloadContainer(valid_code_2);
+		manifestTest.loadContainer(new GeneralGoodsContainer(new ContainerCode("INKU2633836"), 27));
+		assertTrue(manifestTest.find(new ContainerQuery().minWeight(26)).size() == 2);
+		assertTrue(manifestTest.find(new ContainerQuery().owner("INK").type("GeneralGoodsContainer")).size() == 1);
+	}
+	
+	@Test(expected = IllegalArgumentException.class)
+	public void findBadOwner() {
+		new ContainerQuery().owner("msc");
+	}
+	
+	@Test
+	public void stackAggregates() throws Exception{
+		manifestTest = new CargoManifest(3, 2, 1000);
+		assertTrue(manifestTest.getRemainingCapacity("GeneralGoodsContainer") == 6);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2, container_3));
+		assertTrue(manifestTest.getStackWeight(0) == 45);
+		assertTrue(manifestTest.getStackHeight(0) == 2);
+		assertTrue(manifestTest.getStackWeight(2) == 0);
+		assertTrue(manifestTest.getRemainingCapacity("GeneralGoodsContainer") == 2);
+		assertTrue(manifestTest.getRemainingCapacity("DangerousGoodsContainer") == 3);
+		assertTrue(manifestTest.getRemainingCapacity("RefrigeratedContainer") == 2);
+		assertTrue(manifestTest.getAccessibleContainers().equals(Arrays.asList(container_2, container_3)));
+		
+		manifestTest.unloadContainer(valid_code_3);
+		manifestTest.unloadContainer(valid_code_2);
+		assertTrue(manifestTest.getStackWeight(0) == 15);
+		assertTrue(manifestTest.getRemainingCapacity("GeneralGoodsContainer") == 5);
+		assertTrue(manifestTest.getRemainingCapacity("DangerousGoodsContainer") == 4);
+		assertTrue(manifestTest.getAccessibleContainers().equals(Arrays.asList(container_1)));
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void stackWeightNoSuchStack() throws Exception{
+		manifestTest.getStackWeight(NUM_STACKS);
+	}
+	
+	@Test
+	public void digOutPlan() throws Exception{
+		manifestTest = new CargoManifest(3, 3, 1000);
+		GeneralGoodsContainer container_4 = new GeneralGoodsContainer(new ContainerCode("INKU2633836"), 10);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2, container_4, container_3));
+		assertTrue(DigOutPlanner.plan(manifestTest, new ContainerCode("INKU2633836")).isEmpty());
+		List<ContainerMove> moves = DigOutPlanner.plan(manifestTest, valid_code_1);
+		assertTrue(moves.size() == 2);
+		assertTrue(moves.get(0).getContainer() == container_4);
+		assertTrue(moves.get(0).getTo().equals(new ContainerPosition(2, 0)));
+		assertTrue(moves.get(1).getFrom().equals(new ContainerPosition(0, 1)));
+		assertTrue(moves.get(1).getTo().equals(new ContainerPosition(2, 1)));
+		for (ContainerMove move : moves) {
+			manifestTest.restowContainer(move.getContainer().getCode(), move.getTo().getStack());
+		}
+		manifestTest.unloadContainer(valid_code_1);
+		assertTrue(manifestTest.locate(valid_code_2).equals(new ContainerPosition(2, 1)));
+	}
+	
+	@Test
+	public void digOutPlanToQuay() throws Exception{
+		manifestTest = new CargoManifest(2, 3, 1000);
+		GeneralGoodsContainer container_4 = new GeneralGoodsContainer(new ContainerCode("INKU2633836"), 10);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2, container_4, container_3));
+		List<ContainerMove> moves = DigOutPlanner.plan(manifestTest, valid_code_1);
+		assertTrue(moves.size() == 2);
+		assertFalse(moves.get(0).isRestow());
+		assertFalse(moves.get(1).isRestow());
+	}
 	
+	@Test(expected = ManifestException.class)
+	public void restowToWrongType() throws Exception{
+		manifestTest.loadAll(Arrays.asList(container_1, container_3));
+		manifestTest.restowContainer(valid_code_1, 1);
+	}
 	
 	
+	@Test
+	public void stowageOptimizer() throws Exception{
+		manifestTest = new CargoManifest(2, 2, 1000);
+		StowagePlan plan = new StowageOptimizer(2, 10).plan(manifestTest,
+				Arrays.asList(container_1, container_2), new int[] {1, 2});
+		assertEquals(1, plan.getFirstFitRestows());
+		assertEquals(0, plan.getRestows());
+		assertTrue(plan.getStack(0) != plan.getStack(1));
+		List<ContainerPosition> positions = plan.apply(manifestTest);
+		assertEquals(positions.get(1), manifestTest.locate(valid_code_2));
+		assertEquals(1, manifestTest.getStackHeight(plan.getStack(0)));
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void stowagePlanOutOfDate() throws Exception{
+		StowagePlan plan = new StowageOptimizer(1, 0).plan(manifestTest,
+				Arrays.asList(container_1, container_2), new int[] {1, 2});
+		manifestTest.loadContainer(container_3);
+		plan.apply(manifestTest);
+	}
+	
+	@Test
+	public void stowagePlanOtherManifest() throws Exception{
+		manifestTest = new CargoManifest(2, 2, 1000);
+		CargoManifest other = new CargoManifest(2, 2, 1000);
+		other.loadContainer(container_3);
+		other.unloadContainer(valid_code_3);
+		manifestTest.loadContainer(container_3);
+		manifestTest.unloadContainer(valid_code_3);
+		StowagePlan plan = new StowageOptimizer(1, 0).plan(manifestTest,
+				Arrays.asList(container_1, container_2), new int[] {1, 2});
+		assertEquals(manifestTest.getVersion(), other.getVersion());
+		long version = other.getVersion();
+		try {
+			plan.apply(other);
+			fail();
+		} catch (ManifestException e) {
+			assertEquals(version, other.getVersion());
+			assertEquals(0, other.getStackHeight(0));
+			assertEquals(0, other.getStackHeight(1));
+			assertNull(other.locate(valid_code_1));
+		}
+		plan.apply(manifestTest);
+		assertNotNull(manifestTest.locate(valid_code_1));
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void stowageOptimizerDuplicate() throws Exception{
+		manifestTest.loadContainer(container_1);
+		new StowageOptimizer(1, 0).plan(manifestTest, Arrays.asList(container_2, container_1), new int[] {1, 2});
+	}
+	
+	
+	@Test
+	public void balanceLimits() throws Exception{
+		manifestTest = new CargoManifest(4, 3, 1000);
+		manifestTest.setStackCoordinates(new int[] {-100, 100, -100, 100}, new int[] {-50, -50, 50, 50}, 2000, 5000);
+		assertTrue(manifestTest.tryLoad(container_1) == ManifestResult.DONE);
+		assertEquals(-1500, manifestTest.getTrimMoment());
+		assertEquals(-750, manifestTest.getListMoment());
+		assertTrue(manifestTest.tryLoad(container_2) == ManifestResult.OUT_OF_BALANCE);
+		assertEquals(15, manifestTest.snapshot().getCurrentWeight());
+		manifestTest.restowContainer(valid_code_1, 1);
+		assertEquals(1500, manifestTest.getTrimMoment());
+		manifestTest.loadContainer(container_3);
+		assertEquals(-1500, manifestTest.getTrimMoment());
+		assertEquals(-2250, manifestTest.getListMoment());
+		assertEquals(-1500.0 / 45, manifestTest.getLongitudinalCentre(), 1e-9);
+		assertEquals(-50.0, manifestTest.getTransverseCentre(), 1e-9);
+		manifestTest.unloadContainer(valid_code_1);		// unloads are never rejected
+		assertEquals(-3000, manifestTest.getTrimMoment());
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void balanceLoadAllRejected() throws Exception{
+		manifestTest.setStackCoordinates(new int[NUM_STACKS], new int[NUM_STACKS], 0, 0);
+		manifestTest.loadContainer(container_1);
+		int[] longitudinal = new int[NUM_STACKS];
+		longitudinal[1] = 1;
+		manifestTest.setStackCoordinates(longitudinal, new int[NUM_STACKS], 0, 0);
+		try {
+			manifestTest.loadAll(Arrays.asList(container_2, container_3));
+		} finally {
+			assertEquals(15, manifestTest.snapshot().getCurrentWeight());
+		}
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void balanceAlreadyExceeded() throws Exception{
+		manifestTest.loadContainer(container_1);
+		int[] longitudinal = new int[NUM_STACKS];
+		longitudinal[0] = 10;
+		manifestTest.setStackCoordinates(longitudinal, new int[NUM_STACKS], 100, 0);
+	}
+	
+	@Test(expected = ManifestException.class)
+	public void invalidStackCoordinates() throws Exception{
+		manifestTest.setStackCoordinates(new int[3], new int[NUM_STACKS], 0, 0);
+	}
+	
+	
+	@Test
+	public void digOutPlanBalanceToQuay() throws Exception{
+		manifestTest = new CargoManifest(3, 3, 1000);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2));
+		manifestTest.setStackCoordinates(new int[] {0, 1000, -1000}, new int[3], 100, 100);
+		List<ContainerMove> moves = DigOutPlanner.plan(manifestTest, valid_code_1);
+		assertTrue(moves.size() == 1);
+		assertFalse(moves.get(0).isRestow());
+		manifestTest.unloadContainer(valid_code_2);
+		manifestTest.unloadContainer(valid_code_1);
+	}
+	
+	
+	@Test
+	public void digOutPlanBalanceSkipsStack() throws Exception{
+		manifestTest = new CargoManifest(3, 3, 1000);
+		manifestTest.loadAll(Arrays.asList(container_1, container_2));
+		manifestTest.setStackCoordinates(new int[] {0, 1000, 1}, new int[3], 100, 100);
+		List<ContainerMove> moves = DigOutPlanner.plan(manifestTest, valid_code_1);
+		assertTrue(moves.get(0).getTo().equals(new ContainerPosition(2, 0)));
+		manifestTest.restowContainer(valid_code_2, 2);
+		assertEquals(30, manifestTest.getTrimMoment());
+	}
+	
+	
+	/**
+	 * A container of a type of its own, to run out of type numbers.
+	 */
+	private static class NamedContainer extends FreightContainer {
+		
+		private final String name;
+		
+		NamedContainer(int serial, String name) throws InvalidCodeException, InvalidContainerException {
+			super(codeFor(serial), 4);
+			this.name = name;
+		}
+		
+		@Override
+		public String getType() {
+			return name;
+		}
+		
+		private static ContainerCode codeFor(int serial) throws InvalidCodeException {
+			String prefix = String.format("TYPU%06d", serial);
+			for (int check = 0; check < 9; check++) {
+				try {
+					return new ContainerCode(prefix + check);
+				} catch (InvalidCodeException e) {
+					// not the check digit
+				}
+			}
+			return new ContainerCode(prefix + 9);
+		}
+	}
+	
+	private static List<FreightContainer> namedContainers(int from, int count, String prefix) throws Exception {
+		List<FreightContainer> batch = new ArrayList<FreightContainer>();
+		for (int i = from; i < from + count; i++) {
+			batch.add(new NamedContainer(i, prefix + i));
+		}
+		return batch;
+	}
+	
+	@Test
+	public void loadAllTooManyTypes() throws Exception{
+		manifestTest = new CargoManifest(300, 1, 100000);
+		manifestTest.loadContainer(container_1);
+		try {
+			manifestTest.loadAll(namedContainers(0, 127, "A"));
+			fail();
+		} catch (ManifestException e) {
+			assertTrue(e.getMessage().endsWith(ManifestResult.TOO_MANY_TYPES.getMessage()));
+		}
+		assertEquals(15, manifestTest.snapshot().getCurrentWeight());
+		assertEquals(0, manifestTest.getStackHeight(1));
+		assertEquals(126, manifestTest.loadAll(namedContainers(0, 126, "A")).size());
+	}
+	
+	@Test
+	public void loadAllNoSpaceForgetsTypes() throws Exception{
+		manifestTest = new CargoManifest(100, 1, 100000);
+		try {
+			manifestTest.loadAll(namedContainers(0, 127, "A"));
+			fail();
+		} catch (ManifestException e) {
+			assertTrue(e.getMessage().endsWith(ManifestResult.NO_SPACE.getMessage()));
+		}
+		assertEquals(100, manifestTest.loadAll(namedContainers(200, 100, "B")).size());
+	}
+	
+	
+	@Test
+	public void rejectedBatchKeepsVersion() throws Exception{
+		manifestTest = new CargoManifest(1, 3, 1000);
+		manifestTest.loadContainer(container_1);
+		long version = manifestTest.getVersion();
+		try {
+			manifestTest.loadAll(Arrays.asList(container_2, container_3));
+			fail();
+		} catch (ManifestException e) {
+			assertTrue(e.getMessage().endsWith(ManifestResult.NO_SPACE.getMessage()));
+		}
+		assertEquals(version, manifestTest.getVersion());
+		assertTrue(manifestTest.changesSince(version).getChanges().isEmpty());
+		assertEquals(1, manifestTest.getStackHeight(0));
+	}
+	
+	
+	@Test
+	public void archiveHighTiers() throws Exception{
+		manifestTest = new CargoManifest(1, 256, 100000);
+		List<FreightContainer> stack = new ArrayList<FreightContainer>();
+		for (int i = 0; i < 256; i++) {
+			stack.add(new GeneralGoodsContainer(NamedContainer.codeFor(i), 4));
+		}
+		manifestTest.loadAll(stack);
+		Path archive = Files.createTempFile("voyages", ".car");
+		Files.delete(archive);
+		try {
+			VoyageArchive.append(archive, "high", manifestTest);
+			final int[][] heights = new int[1][];
+			VoyageArchive.scan(archive, EnumSet.of(VoyageArchive.Column.HEIGHT), new VoyageArchive.Handler() {
+				public void voyage(VoyageArchive.Voyage voyage) {
+					heights[0] = voyage.get(VoyageArchive.Column.HEIGHT);
+				}
+			});
+			for (int i = 0; i < 256; i++) {
+				assertEquals(i, heights[0][i]);
+			}
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+	
+	@Test(expected = IOException.class)
+	public void archiveTooHigh() throws Exception{
+		Path archive = Files.createTempFile("voyages", ".car");
+		try {
+			VoyageArchive.append(archive, "too high", new CargoManifest(1, 257, 100));
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+	
+	
+	@Test
+	public void archiveTornAppend() throws Exception{
+		Path archive = Files.createTempFile("voyages", ".car");
+		Files.delete(archive);
+		try {
+			manifestTest.loadAll(Arrays.asList(container_1, container_3));
+			VoyageArchive.append(archive, "first", manifestTest);
+			long committed = Files.size(archive);
+			byte[] torn = new byte[40];		// an uncommitted block: its length was never written
+			Arrays.fill(torn, 4, torn.length, (byte) 0x5A);
+			Files.write(archive, torn, StandardOpenOption.APPEND);
+			final StringBuilder names = new StringBuilder();
+			VoyageArchive.Handler handler = new VoyageArchive.Handler() {
+				public void voyage(VoyageArchive.Voyage voyage) {
+					names.append(voyage.getName()).append(';');
+				}
+			};
+			assertEquals(1, VoyageArchive.scan(archive, EnumSet.of(VoyageArchive.Column.STACK), handler));
+			VoyageArchive.append(archive, "later", manifestTest);
+			assertEquals(2, VoyageArchive.scan(archive, EnumSet.of(VoyageArchive.Column.STACK), handler));
+			assertEquals("first;first;later;", names.toString());
+			assertEquals(2 * committed - 8, Files.size(archive));
+		} finally {
+			Files.deleteIfExists(archive);
+		}
+	}
+	
+	
+	@Test
+	public void sharedManifestRestart() throws Exception{
+		manifestTest.loadAll(Arrays.asList(container_1, container_2));
+		Path file = Files.createTempFile("manifest", ".shm");
+		try {
+			SharedManifest.create(manifestTest, file);
+			SharedManifestView view = SharedManifestView.open(file);
+			// a restarted writer of the same ship publishes in place, under the open view
+			CargoManifest restarted = new CargoManifest(NUM_STACKS, MAX_HEIGHT, MAX_WEIGHT);
+			restarted.loadContainer(container_3);
+			SharedManifest.create(restarted, file);
+			assertEquals(1, view.getVersion());
+			assertTrue(view.toString().equals(restarted.toString()));
+			// a writer of another ship replaces the file, leaving the open view as it was
+			SharedManifest.create(new CargoManifest(2, 2, 100), file);
+			assertTrue(view.toString().equals(restarted.toString()));
+			assertEquals(2, SharedManifestView.open(file).getStackNumber());
+		} finally {
+			Files.delete(file);
+		}
+	}
+	
+	
+	@Test(expected = ManifestException.class)
+	public void exportTierTooHigh() throws Exception{
+		manifestTest = new CargoManifest(1, 100, 100000);
+		List<FreightContainer> stack = new ArrayList<FreightContainer>();
+		for (int i = 0; i < 100; i++) {
+			stack.add(new GeneralGoodsContainer(NamedContainer.codeFor(i), 4));
+		}
+		manifestTest.loadAll(stack);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			StowagePlanExporter.export(manifestTest, "PLAN", new Date(0), Channels.newChannel(out));
+		} finally {
+			assertEquals(0, out.size());
+		}
+	}
+	
+	@Test
+	public void exportStackNumberLimit() throws Exception{
+		manifestTest = new CargoManifest(100001, 1, 100000);
+		manifestTest.loadContainer(container_1);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertEquals(1, StowagePlanExporter.export(manifestTest, "PLAN", new Date(0), Channels.newChannel(out)));
+		manifestTest.restowContainer(valid_code_1, 100000);
+		try {
+			StowagePlanExporter.export(manifestTest, "PLAN", new Date(0), Channels.newChannel(out));
+			fail();
+		} catch (ManifestException e) {
+			assertTrue(e.getMessage().endsWith("Stack 100000 does not fit in a stowage cell"));
+		}
+	}
 	
 }